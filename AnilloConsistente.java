@@ -0,0 +1,75 @@
+package codigo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Anillo de hash consistente con nodos virtuales. Asigna cada clave al primer nodo
+ * que aparece en el anillo a partir de su hash, de forma que al añadir o quitar un
+ * nodo solo cambian de dueño las claves del tramo afectado.
+ */
+public class AnilloConsistente {
+    private final int nodosVirtuales;  // Puntos del anillo por nodo, para repartir la carga
+    private final TreeMap<Long, String> anillo = new TreeMap<>();
+    private final Set<String> nodos = new LinkedHashSet<>();
+
+    public AnilloConsistente(int nodosVirtuales) {
+        if (nodosVirtuales <= 0)
+            throw new IllegalArgumentException("El número de nodos virtuales debe ser positivo");
+        this.nodosVirtuales = nodosVirtuales;
+    }
+
+    public void agregar(String nodo) {
+        if (!nodos.add(nodo))
+            return;
+        for (int i = 0; i < nodosVirtuales; i++)
+            anillo.put(hash(nodo + "#" + i), nodo);
+    }
+
+    public void quitar(String nodo) {
+        if (!nodos.remove(nodo))
+            return;
+        for (int i = 0; i < nodosVirtuales; i++)
+            anillo.remove(hash(nodo + "#" + i), nodo);
+    }
+
+    /**
+     * Nodo dueño de una clave, o null si el anillo está vacío.
+     */
+    public String nodoPara(String clave) {
+        if (anillo.isEmpty())
+            return null;
+        Map.Entry<Long, String> entrada = anillo.ceilingEntry(hash(clave));
+        return entrada != null ? entrada.getValue() : anillo.firstEntry().getValue();
+    }
+
+    public boolean contiene(String nodo) {
+        return nodos.contains(nodo);
+    }
+
+    public Set<String> getNodos() {
+        return Collections.unmodifiableSet(nodos);
+    }
+
+    public int size() {
+        return nodos.size();
+    }
+
+    /**
+     * FNV-1a de 64 bits seguido de la mezcla final de MurmurHash3 para dispersar
+     * claves parecidas ("f1#0", "f1#1", ...).
+     */
+    static long hash(String texto) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : texto.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
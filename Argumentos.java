@@ -0,0 +1,83 @@
+package codigo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lectura de los argumentos de arranque de un agente con la forma "clave=valor".
+ * Un argumento sin '=' se interpreta como una opción activada ("clave" -> "true").
+ * Los argumentos que no son texto (por ejemplo, observadores pasados al crear el agente
+ * desde código) se guardan aparte y se buscan por tipo.
+ */
+public class Argumentos {
+    private final Map<String, String> valores = new HashMap<>();
+    private final List<Object> objetos = new ArrayList<>();
+
+    public Argumentos(Object[] args) {
+        if (args == null)
+            return;
+        for (Object arg : args) {
+            if (!(arg instanceof String texto)) {
+                if (arg != null)
+                    objetos.add(arg);
+                continue;
+            }
+            texto = texto.trim();
+            int igual = texto.indexOf('=');
+            if (igual < 0)
+                valores.put(texto, "true");
+            else
+                valores.put(texto.substring(0, igual).trim(), texto.substring(igual + 1).trim());
+        }
+    }
+
+    public boolean contiene(String clave) {
+        return valores.containsKey(clave);
+    }
+
+    public String texto(String clave, String porDefecto) {
+        return valores.getOrDefault(clave, porDefecto);
+    }
+
+    public long entero(String clave, long porDefecto) {
+        String valor = valores.get(clave);
+        if (valor == null)
+            return porDefecto;
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            System.out.println("Argumento no válido para '" + clave + "': " + valor);
+            return porDefecto;
+        }
+    }
+
+    public double decimal(String clave, double porDefecto) {
+        String valor = valores.get(clave);
+        if (valor == null)
+            return porDefecto;
+        try {
+            return Double.parseDouble(valor);
+        } catch (NumberFormatException e) {
+            System.out.println("Argumento no válido para '" + clave + "': " + valor);
+            return porDefecto;
+        }
+    }
+
+    public boolean booleano(String clave, boolean porDefecto) {
+        String valor = valores.get(clave);
+        return valor == null ? porDefecto : Boolean.parseBoolean(valor);
+    }
+
+    /**
+     * Primer argumento no textual del tipo indicado, o el valor por defecto si no hay ninguno.
+     */
+    public <T> T objeto(Class<T> tipo, T porDefecto) {
+        for (Object objeto : objetos) {
+            if (tipo.isInstance(objeto))
+                return tipo.cast(objeto);
+        }
+        return porDefecto;
+    }
+}
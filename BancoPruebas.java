@@ -0,0 +1,304 @@
+package codigo;
+
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.wrapper.AgentContainer;
+import jade.wrapper.AgentController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Banco de pruebas de extremo a extremo: arranca una plataforma JADE en esta JVM con
+ * vendedores y compradores sin interfaz, lanza las subastas y espera a que todas terminen
+ * con la confirmación de compra. Informa de subastas por segundo, latencia de ronda,
+ * mensajes por subasta y memoria, y puede compararse con una línea base guardada.
+ *
+ * Argumentos "clave=valor":
+ *   vendedores, compradores, titulos, librosPorComprador, distribucion (uniforme|zipf),
+ *   precioInicial, incremento, rondasMaximas, periodoRonda, graciaQuorum, calentamiento,
+ *   duracionMaxima (ms), semilla, pujaAutomatica, modalidad (inglesa|sobre-cerrado|holandesa), incrementoAdaptativo, cfpPorLotes, hilosDecodificacion, lineaBase=<fichero>, guardarLineaBase=<fichero>, tolerancia
+ *
+ * Código de salida: 0 correcto, 1 peor que la línea base, 2 subastas sin terminar.
+ */
+public class BancoPruebas {
+    private static final String TELEFONO = "600000000";
+
+    /**
+     * Observador de todos los vendedores: mide rondas, ventas y mensajes.
+     */
+    private static class ColectorVendedores implements ObservadorVendedor {
+        final Map<String, Long> ultimaRonda = new ConcurrentHashMap<>();
+        final List<Long> latenciasRonda = Collections.synchronizedList(new ArrayList<>());
+        final AtomicLong rondas = new AtomicLong();
+        final AtomicLong mensajes = new AtomicLong();
+        final CountDownLatch pendientes;
+
+        ColectorVendedores(int subastas) {
+            this.pendientes = new CountDownLatch(subastas);
+        }
+
+        void inicio(String titulo) {
+            ultimaRonda.put(titulo, System.nanoTime());
+        }
+
+        @Override
+        public void actualizarSubastaEnTabla(String titulo, float precioActual, float incremento, String pujadores, int ronda) {
+            long ahora = System.nanoTime();
+            Long anterior = ultimaRonda.put(titulo, ahora);
+            if (anterior != null)
+                latenciasRonda.add(ahora - anterior);
+            rondas.incrementAndGet();
+        }
+
+        @Override
+        public void notificarLibroVendido(String titulo, String comprador, float precioFinal, String telefono) {
+            ultimaRonda.remove(titulo);
+            pendientes.countDown();
+        }
+
+        @Override
+        public void mensajeEnviado(int performativa, int receptores) {
+            mensajes.addAndGet(receptores);
+        }
+    }
+
+    /**
+     * Observador de todos los compradores: solo cuenta mensajes.
+     */
+    private static class ColectorCompradores implements ObservadorComprador {
+        final AtomicLong mensajes = new AtomicLong();
+
+        @Override
+        public void mensajeEnviado(int performativa, int receptores) {
+            mensajes.addAndGet(receptores);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Argumentos argumentos = new Argumentos(args);
+        int vendedores = (int) argumentos.entero("vendedores", 2);
+        int compradores = (int) argumentos.entero("compradores", 20);
+        int titulos = (int) argumentos.entero("titulos", 100);
+        int librosPorComprador = (int) argumentos.entero("librosPorComprador", 10);
+        boolean zipf = "zipf".equalsIgnoreCase(argumentos.texto("distribucion", "uniforme"));
+        float precioInicial = (float) argumentos.decimal("precioInicial", 10);
+        float incremento = (float) argumentos.decimal("incremento", 1);
+        int rondasMaximas = (int) argumentos.entero("rondasMaximas", 10);
+        long periodoRonda = argumentos.entero("periodoRonda", 500);
+        long graciaQuorum = argumentos.entero("graciaQuorum", 20);
+        long calentamiento = argumentos.entero("calentamiento", 2000);
+        long duracionMaxima = argumentos.entero("duracionMaxima", 120000);
+        boolean pujaAutomatica = argumentos.booleano("pujaAutomatica", false);
+        String modalidad = argumentos.texto("modalidad", Vendedor.SUBASTA_INGLESA);
+        double incrementoAdaptativo = argumentos.decimal("incrementoAdaptativo", 1.0);
+        boolean cfpPorLotes = argumentos.booleano("cfpPorLotes", false);
+        long hilosDecodificacion = argumentos.entero("hilosDecodificacion", 0);
+        Random aleatorio = new Random(argumentos.entero("semilla", 42));
+
+        // Preferencias: cada comprador quiere varios títulos con un precio máximo aleatorio
+        List<String> catalogo = new ArrayList<>(titulos);
+        for (int i = 0; i < titulos; i++)
+            catalogo.add(String.format("Libro-%06d", i));
+        double[] acumulada = zipf ? distribucionZipf(titulos) : null;
+        List<Map<String, Float>> preferencias = new ArrayList<>(compradores);
+        Set<String> demandados = new HashSet<>();
+        for (int c = 0; c < compradores; c++) {
+            Map<String, Float> libros = new LinkedHashMap<>();
+            while (libros.size() < Math.min(librosPorComprador, titulos)) {
+                int indice = zipf ? muestraZipf(acumulada, aleatorio) : aleatorio.nextInt(titulos);
+                libros.put(catalogo.get(indice), precioInicial + incremento * (1 + aleatorio.nextInt(rondasMaximas)));
+            }
+            demandados.addAll(libros.keySet());
+            preferencias.add(libros);
+        }
+        // Solo se subastan los títulos que alguien quiere: los demás no terminarían nunca
+        List<String> subastados = new ArrayList<>();
+        for (String titulo : catalogo) {
+            if (demandados.contains(titulo))
+                subastados.add(titulo);
+        }
+
+        ColectorVendedores colectorVendedores = new ColectorVendedores(subastados.size());
+        ColectorCompradores colectorCompradores = new ColectorCompradores();
+        MuestreoMemoria memoria = new MuestreoMemoria();
+
+        jade.core.Runtime runtime = jade.core.Runtime.instance();
+        runtime.setCloseVM(false);
+        Profile perfil = new ProfileImpl();
+        perfil.setParameter(Profile.GUI, "false");
+        AgentContainer contenedor = runtime.createMainContainer(perfil);
+
+        List<AgentController> controladoresVendedores = new ArrayList<>();
+        for (int v = 0; v < vendedores; v++) {
+            AgentController vendedor = contenedor.createNewAgent("vendedor" + v, Vendedor.class.getName(), new Object[]{
+                    "headless", "periodoRonda=" + periodoRonda, "cierreAnticipado", "graciaQuorum=" + graciaQuorum,
+                    "modalidad=" + modalidad, "incrementoAdaptativo=" + incrementoAdaptativo, "cfpPorLotes=" + cfpPorLotes,
+                    "hilosDecodificacion=" + hilosDecodificacion, colectorVendedores});
+            vendedor.start();
+            controladoresVendedores.add(vendedor);
+        }
+        for (int c = 0; c < compradores; c++) {
+            StringJoiner libros = new StringJoiner("|");
+            for (Map.Entry<String, Float> libro : preferencias.get(c).entrySet())
+                libros.add(libro.getKey() + ":" + libro.getValue());
+            contenedor.createNewAgent("comprador" + c, Comprador.class.getName(), new Object[]{
+                    "headless", "telefono=" + TELEFONO, "libros=" + libros, "pujaAutomatica=" + pujaAutomatica,
+                    "hilosDecodificacion=" + hilosDecodificacion, colectorCompradores}).start();
+        }
+        // Dar tiempo a que los vendedores conozcan a los compradores a través del DF
+        Thread.sleep(calentamiento);
+
+        memoria.iniciar();
+        long inicio = System.nanoTime();
+        for (int v = 0; v < vendedores; v++) {
+            List<String> propios = new ArrayList<>();
+            for (int i = v; i < subastados.size(); i += vendedores)
+                propios.add(subastados.get(i));
+            controladoresVendedores.get(v).putO2AObject((Vendedor.Orden) vendedor -> {
+                for (String titulo : propios) {
+                    colectorVendedores.inicio(titulo);
+                    vendedor.iniciarSubasta(titulo, precioInicial, incremento);
+                }
+            }, AgentController.ASYNC);
+        }
+        boolean completas = colectorVendedores.pendientes.await(duracionMaxima, TimeUnit.MILLISECONDS);
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        memoria.detener();
+
+        long terminadas = subastados.size() - colectorVendedores.pendientes.getCount();
+        long mensajes = colectorVendedores.mensajes.get() + colectorCompradores.mensajes.get();
+        Properties resultados = new Properties();
+        resultados.setProperty("subastasPorSegundo", String.format(Locale.ROOT, "%.3f", terminadas / segundos));
+        long[] latencias = ordenar(colectorVendedores.latenciasRonda);
+        resultados.setProperty("latenciaRondaP50Ms", milisegundos(percentil(latencias, 0.50)));
+        resultados.setProperty("latenciaRondaP90Ms", milisegundos(percentil(latencias, 0.90)));
+        resultados.setProperty("latenciaRondaP99Ms", milisegundos(percentil(latencias, 0.99)));
+        resultados.setProperty("mensajesPorSubasta", String.format(Locale.ROOT, "%.1f", terminadas == 0 ? 0.0 : (double) mensajes / terminadas));
+        resultados.setProperty("memoriaMaximaMB", String.format(Locale.ROOT, "%.1f", memoria.maximo / 1048576.0));
+
+        System.out.println("=== Banco de pruebas de subastas ===");
+        System.out.println("Vendedores: " + vendedores + ", compradores: " + compradores + ", títulos subastados: "
+                + subastados.size() + " de " + titulos + (zipf ? " (zipf)" : " (uniforme)"));
+        System.out.println("Subastas terminadas: " + terminadas + " en " + String.format(Locale.ROOT, "%.2f", segundos) + " s"
+                + (completas ? "" : " (tiempo agotado)"));
+        System.out.println("Rondas: " + colectorVendedores.rondas.get() + ", mensajes: " + mensajes);
+        for (String clave : new TreeSet<>(resultados.stringPropertyNames()))
+            System.out.println(clave + " = " + resultados.getProperty(clave));
+
+        int codigo = completas ? 0 : 2;
+        String guardar = argumentos.texto("guardarLineaBase", null);
+        if (guardar != null) {
+            try (OutputStream salida = Files.newOutputStream(Paths.get(guardar))) {
+                resultados.store(salida, "Línea base del banco de pruebas de subastas");
+            }
+        }
+        String lineaBase = argumentos.texto("lineaBase", null);
+        if (lineaBase != null && codigo == 0 && !compararConLineaBase(resultados, Paths.get(lineaBase), argumentos.decimal("tolerancia", 0.2)))
+            codigo = 1;
+
+        runtime.shutDown();
+        System.exit(codigo);
+    }
+
+    /**
+     * Comparar con la línea base: el rendimiento no debe bajar, ni la latencia y los mensajes
+     * subir, más de la tolerancia indicada.
+     */
+    private static boolean compararConLineaBase(Properties resultados, Path fichero, double tolerancia) throws IOException {
+        Properties base = new Properties();
+        try (InputStream entrada = Files.newInputStream(fichero)) {
+            base.load(entrada);
+        }
+        boolean correcto = true;
+        correcto &= comparar(resultados, base, "subastasPorSegundo", tolerancia, true);
+        correcto &= comparar(resultados, base, "latenciaRondaP99Ms", tolerancia, false);
+        correcto &= comparar(resultados, base, "mensajesPorSubasta", tolerancia, false);
+        return correcto;
+    }
+
+    private static boolean comparar(Properties resultados, Properties base, String clave, double tolerancia, boolean mayorEsMejor) {
+        String valorBase = base.getProperty(clave);
+        if (valorBase == null)
+            return true;
+        double esperado = Double.parseDouble(valorBase);
+        double obtenido = Double.parseDouble(resultados.getProperty(clave));
+        boolean correcto = mayorEsMejor ? obtenido >= esperado * (1 - tolerancia) : obtenido <= esperado * (1 + tolerancia);
+        if (!correcto)
+            System.out.println("REGRESIÓN en " + clave + ": " + obtenido + " (línea base " + esperado + ")");
+        return correcto;
+    }
+
+    private static double[] distribucionZipf(int n) {
+        double[] acumulada = new double[n];
+        double suma = 0;
+        for (int i = 0; i < n; i++) {
+            suma += 1.0 / (i + 1);
+            acumulada[i] = suma;
+        }
+        for (int i = 0; i < n; i++)
+            acumulada[i] /= suma;
+        return acumulada;
+    }
+
+    private static int muestraZipf(double[] acumulada, Random aleatorio) {
+        int indice = Arrays.binarySearch(acumulada, aleatorio.nextDouble());
+        return indice >= 0 ? indice : Math.min(-indice - 1, acumulada.length - 1);
+    }
+
+    private static long[] ordenar(List<Long> valores) {
+        long[] ordenados;
+        synchronized (valores) {
+            ordenados = new long[valores.size()];
+            for (int i = 0; i < ordenados.length; i++)
+                ordenados[i] = valores.get(i);
+        }
+        Arrays.sort(ordenados);
+        return ordenados;
+    }
+
+    private static long percentil(long[] ordenados, double p) {
+        if (ordenados.length == 0)
+            return 0;
+        return ordenados[Math.min(ordenados.length - 1, (int) Math.ceil(p * ordenados.length) - 1)];
+    }
+
+    private static String milisegundos(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+    }
+
+    /**
+     * Muestreo periódico de la memoria de montículo usada durante la prueba.
+     */
+    private static class MuestreoMemoria {
+        private final MemoryMXBean bean = ManagementFactory.getMemoryMXBean();
+        private volatile long maximo = 0;
+        private Timer temporizador;
+
+        void iniciar() {
+            temporizador = new Timer("muestreo-memoria", true);
+            temporizador.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    maximo = Math.max(maximo, bean.getHeapMemoryUsage().getUsed());
+                }
+            }, 0, 100);
+        }
+
+        void detener() {
+            temporizador.cancel();
+            maximo = Math.max(maximo, bean.getHeapMemoryUsage().getUsed());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package codigo;
+
+import javax.swing.*;
+import javax.swing.text.Element;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Notificaciones de una interfaz. Los agentes solo encolan el texto (sin bloqueos) y un
+ * temporizador de Swing lo vuelca al área de texto a una frecuencia fija, conservando
+ * las últimas líneas. La cola también está acotada: si el hilo de Swing se retrasa, se
+ * descartan las notificaciones más antiguas y se indica cuántas en el siguiente volcado.
+ * Opcionalmente se copian las notificaciones a un fichero que rota al superar un tamaño máximo.
+ */
+public class ColaNotificaciones {
+    public static final int MAX_LINEAS = 500;  // Líneas que se conservan por defecto en el área
+    public static final int FOTOGRAMAS_POR_SEGUNDO = 20;  // Volcados al área por segundo
+    public static final long TAMANO_FICHERO = 1 << 20;  // Tamaño a partir del cual rota el fichero (bytes)
+    public static final int MAX_PENDIENTES = 10 * MAX_LINEAS;  // Notificaciones que caben en la cola
+
+    private final ConcurrentLinkedQueue<String> pendientes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger numeroPendientes = new AtomicInteger();  // El size() de la cola es O(n)
+    private final AtomicInteger descartadas = new AtomicInteger();  // Desde el último volcado
+    private final int maxPendientes;
+    private final JTextArea area;
+    private final int maxLineas;
+    private final Timer temporizador;
+    private Path fichero;
+    private long tamanoMaximo;
+    private long escritos = 0;
+    private BufferedWriter salida;
+
+    public ColaNotificaciones(JTextArea area) {
+        this(area, MAX_LINEAS, FOTOGRAMAS_POR_SEGUNDO);
+    }
+
+    public ColaNotificaciones(JTextArea area, int maxLineas, int fotogramasPorSegundo) {
+        this.area = area;
+        this.maxLineas = maxLineas;
+        this.maxPendientes = Math.max(maxLineas, MAX_PENDIENTES);
+        this.temporizador = new Timer(1000 / fotogramasPorSegundo, e -> volcar());
+        temporizador.start();
+    }
+
+    /**
+     * Encolar una notificación. Se puede llamar desde cualquier hilo. Con la cola llena se
+     * descarta la notificación más antigua.
+     */
+    public void agregar(String mensaje) {
+        pendientes.add(mensaje);
+        if (numeroPendientes.incrementAndGet() > maxPendientes && pendientes.poll() != null) {
+            numeroPendientes.decrementAndGet();
+            descartadas.incrementAndGet();
+        }
+    }
+
+    /**
+     * Copiar también las notificaciones al fichero indicado. Al superar el tamaño máximo
+     * el fichero pasa a llamarse "fichero.1" y se empieza uno nuevo.
+     */
+    public void volcarAFichero(Path fichero, long tamanoMaximo) throws IOException {
+        this.fichero = fichero;
+        this.tamanoMaximo = tamanoMaximo;
+        abrirFichero();
+    }
+
+    public void detener() {
+        temporizador.stop();
+        volcar();
+        cerrarFichero();
+    }
+
+    /**
+     * Hilo de Swing: añadir al área las notificaciones pendientes con una sola modificación
+     * del documento y recortar las líneas más antiguas.
+     */
+    private void volcar() {
+        if (pendientes.isEmpty())
+            return;
+        StringBuilder texto = new StringBuilder();
+        int perdidas = descartadas.getAndSet(0);
+        if (perdidas > 0) {
+            String aviso = "(" + perdidas + " notificaciones descartadas)";
+            texto.append(aviso).append('\n');
+            escribirEnFichero(aviso);
+        }
+        String mensaje;
+        while ((mensaje = pendientes.poll()) != null) {
+            numeroPendientes.decrementAndGet();
+            texto.append(mensaje).append('\n');
+            escribirEnFichero(mensaje);
+        }
+        if (salida != null) {
+            try {
+                salida.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        area.append(texto.toString());
+        Element raiz = area.getDocument().getDefaultRootElement();
+        // La última línea es la vacía que sigue al último salto de línea
+        int sobrantes = raiz.getElementCount() - 1 - maxLineas;
+        if (sobrantes > 0)
+            area.replaceRange("", 0, raiz.getElement(sobrantes - 1).getEndOffset());
+        area.setCaretPosition(area.getDocument().getLength());
+    }
+
+    private void escribirEnFichero(String mensaje) {
+        if (salida == null)
+            return;
+        try {
+            salida.write(mensaje);
+            salida.newLine();
+            escritos += bytesUtf8(mensaje) + System.lineSeparator().length();
+            if (escritos > tamanoMaximo) {
+                cerrarFichero();
+                Files.move(fichero, fichero.resolveSibling(fichero.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+                abrirFichero();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            cerrarFichero();
+        }
+    }
+
+    /**
+     * Bytes que ocupa el texto en UTF-8, sin codificarlo.
+     */
+    private static int bytesUtf8(String texto) {
+        int bytes = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80)
+                bytes++;
+            else if (c < 0x800)
+                bytes += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < texto.length() && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else
+                bytes += 3;
+        }
+        return bytes;
+    }
+
+    private void abrirFichero() throws IOException {
+        salida = Files.newBufferedWriter(fichero, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        escritos = Files.size(fichero);
+    }
+
+    private void cerrarFichero() {
+        if (salida == null)
+            return;
+        try {
+            salida.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        salida = null;
+    }
+}
@@ -2,7 +2,10 @@ package codigo;
 
 import jade.content.Concept;
 import jade.content.ContentElement;
+import jade.content.ContentElementList;
+import jade.content.ContentManager;
 import jade.content.lang.Codec;
+import jade.content.lang.leap.LEAPCodec;
 import jade.content.lang.sl.SLCodec;
 import jade.content.onto.Ontology;
 import jade.content.onto.OntologyException;
@@ -10,11 +13,13 @@ import jade.content.onto.basic.Action;
 import jade.core.Agent;
 import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.TickerBehaviour;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 import jade.domain.DFService;
 import jade.domain.FIPAException;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import ontologia.IbrowOntology;
 import ontologia.Libro;
@@ -24,43 +29,101 @@ import ontologia.impl.*;
 
 
 import javax.swing.SwingUtilities;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
 
 public class Comprador extends Agent {
-    private final ArrayList<DefaultLibro> bookPreferences = new ArrayList<>();
-    private CompradorGUI gui;
+    // Propiedad del servicio en el DF con cada título que busca el comprador
+    static final String PROPIEDAD_LIBRO = "libro";
+    // Libros buscados: título -> precio máximo
+    private IndicePreferencias preferencias;
+    // Ficheros de preferencias importados: fichero -> contenido de la última importación
+    private final Map<Path, Map<String, ImportadorCsv.Fila>> importaciones = new HashMap<>();
+    private ObservadorComprador gui;
+    private CompradorGUI ventana;  // Interfaz gráfica; null en modo headless
     private int telefono;
     protected boolean puedeSalir = true;
     private final Set<String> librosGanadorRonda = new HashSet<>(); //libros de los que ha sido ganador en la ronda anterior
     private final Set<String> librosEsperandoConfirmaciones = new HashSet<>();
     private Codec codec;
+    private Codec codecCompacto;  // Codificación binaria (LEAP) opcional para la misma ontología
+    private boolean usarCodecCompacto = false;
     private Ontology ontology;
+    private boolean registrado = false;  // Si está dado de alta en las Páginas Amarillas
+    private boolean registroPendiente = false;  // Títulos cambiados y aún no publicados en el DF
+    private static final long PERIODO_REGISTRO = 1000;  // Por defecto, ms entre publicaciones en el DF
+    private boolean pujaAutomatica = false;  // Enviar el precio máximo al empezar cada subasta
+    // Subastas en curso con precio máximo enviado: título -> vendedor -> puja automática
+    private final Map<String, Map<String, PujaAutomatica>> pujasAutomaticas = new HashMap<>();
+    // Métricas (JMX y, con "puertoMetricas=<puerto>", HTTP en formato Prometheus)
+    private Metricas metricas;
+    private Metricas.Contador cfpRecibidos;
+    private Metricas.Contador pujasEnviadas;
+    private Metricas.Contador subastasGanadas;
+    private Metricas.Contador subastasPerdidas;
+    private Metricas.Contador mensajesEnviados;
+    private Metricas.Histograma decodificacion;
+    // Pool de decodificación de los CFP (opcional, argumento "hilosDecodificacion=<n>")
+    private DecodificadorParalelo decodificador;
+    private static final int LOTE_DECODIFICADOR = 64;  // CFP entregados por pasada
 
     @Override
     protected void setup() {
         System.out.println(getLocalName() + ": Inicializando comprador...");
 
+        Argumentos argumentos = new Argumentos(getArguments());
         //Ontologia y lenguaje
         codec = new SLCodec();
+        codecCompacto = new LEAPCodec();
+        usarCodecCompacto = "leap".equalsIgnoreCase(argumentos.texto("codec", "sl"));
         ontology = IbrowOntology.getInstance();
         getContentManager().registerLanguage(codec);
+        getContentManager().registerLanguage(codecCompacto);
         getContentManager().registerOntology(ontology);
-
-        // Inicializar la GUI
-        gui = new CompradorGUI(this);
-
-        // Leer las preferencias del usuario
-        addBehaviour(new OneShotBehaviour() {
-            @Override
-            public void action() {
-                configurePreferences();
-            }
-        });
+        crearMetricas(argumentos);
+        preferencias = new IndicePreferencias(argumentos.booleano("normalizarTitulos", false));
+        pujaAutomatica = argumentos.booleano("pujaAutomatica", false);
+
+        if (argumentos.booleano("headless", false)) {
+            // Sin interfaz: los eventos van al observador recibido como argumento, si lo hay
+            gui = argumentos.objeto(ObservadorComprador.class, new ObservadorComprador() {});
+        } else {
+            // Inicializar la GUI
+            ventana = new CompradorGUI(this);
+            String ficheroNotificaciones = argumentos.texto("notificaciones", null);
+            if (ficheroNotificaciones != null)
+                ventana.volcarNotificacionesA(Paths.get(ficheroNotificaciones));
+            gui = ventana;
+        }
+        // Preferencias indicadas en los argumentos, antes de registrarse en el DF
+        cargarPreferencias(argumentos);
+
+        if (argumentos.contiene("telefono")) {
+            telefono = (int) argumentos.entero("telefono", 0);
+            if (ventana != null)
+                ventana.showBookInputDialog();
+        } else if (ventana != null) {
+            // Leer las preferencias del usuario
+            addBehaviour(new OneShotBehaviour() {
+                @Override
+                public void action() {
+                    configurePreferences();
+                }
+            });
+        } else {
+            System.out.println(getLocalName() + ": modo headless sin teléfono (telefono=<número>).");
+        }
         // Registrar al agente en las Páginas Amarillas
         registerInYellowPages();
+        // Los cambios en los títulos se publican en el DF juntos, como mucho una vez por periodo
+        addBehaviour(new PublicarRegistroBehaviour(argumentos.entero("periodoRegistro", PERIODO_REGISTRO)));
+        int hilosDecodificacion = (int) argumentos.entero("hilosDecodificacion", 0);
+        if (hilosDecodificacion > 0) {
+            decodificador = new DecodificadorParalelo(this, hilosDecodificacion, LOTE_DECODIFICADOR, this::crearGestorContenido, decodificacion);
+            addBehaviour(decodificador);
+        }
         // Comportamiento para gestionar propuestas.
         addBehaviour(new ReceiveCFProposalBehaviour());
         // Comportamiento para recibir resultados de la subasta.
@@ -71,21 +134,111 @@ public class Comprador extends Agent {
         addBehaviour(new ReceiveRequestBehaviour());
         //Recibir Not understood
         addBehaviour(new ReceiveNotUnderstoodBehaviour());
+        // Órdenes recibidas desde fuera de la plataforma (O2A), ejecutadas en el hilo del agente
+        setEnabledO2ACommunication(true, 0);
+        addBehaviour(new ProcesarOrdenesBehaviour());
+    }
+
+    /**
+     * Cargar las preferencias de los argumentos: "libros=Título:precio|Título:precio" y/o
+     * "preferencias=<fichero>" con un CSV "título,precio máximo" (se importa por lotes).
+     */
+    private void cargarPreferencias(Argumentos argumentos) {
+        String libros = argumentos.texto("libros", null);
+        if (libros != null) {
+            for (String libro : libros.split("\\|")) {
+                int separador = libro.lastIndexOf(':');
+                try {
+                    agregarPreferencia(libro.substring(0, separador).trim(), Double.parseDouble(libro.substring(separador + 1).trim()));
+                } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                    System.out.println(getLocalName() + ": preferencia no válida: " + libro);
+                }
+            }
+        }
+        String fichero = argumentos.texto("preferencias", null);
+        if (fichero != null)
+            importarPreferencias(Paths.get(fichero));
+    }
+
+    /**
+     * Importar un CSV de libros buscados: "título,precio máximo". Si el fichero ya se importó
+     * antes, solo se aplican las diferencias: precios nuevos o cambiados y títulos retirados.
+     * El DF se actualiza una sola vez, al terminar.
+     */
+    public void importarPreferencias(Path fichero) {
+        addBehaviour(new OneShotBehaviour(this) {
+            @Override
+            public void action() {
+                Map<String, ImportadorCsv.Fila> estado = importaciones.computeIfAbsent(fichero.toAbsolutePath().normalize(), f -> new HashMap<>());
+                addBehaviour(new ImportadorCsv(Comprador.this, fichero, false, estado, new ImportacionPreferencias()));
+            }
+        });
+    }
+
+    private class ImportacionPreferencias implements ImportadorCsv.Destino {
+        @Override
+        public void lote(List<ImportadorCsv.Fila> altas, List<ImportadorCsv.Fila> cambios, List<String> bajas) {
+            List<ImportadorCsv.Fila> puestas = new ArrayList<>(altas.size() + cambios.size());
+            puestas.addAll(altas);
+            puestas.addAll(cambios);
+            for (ImportadorCsv.Fila fila : puestas)
+                preferencias.poner(fila.titulo, fila.precio);
+            preferencias.quitarTodos(bajas);
+            if (!pujasAutomaticas.isEmpty()) {
+                for (ImportadorCsv.Fila fila : cambios)
+                    revisarPujasAutomaticas(fila.titulo, null);
+                for (String titulo : bajas)
+                    revisarPujasAutomaticas(titulo, null);
+            }
+            gui.preferenciasImportadas(puestas, bajas);
+        }
+
+        @Override
+        public void terminada(ImportadorCsv.Informe informe) {
+            if (informe.altas + informe.cambios + informe.bajas > 0)
+                actualizarRegistro();
+            gui.agregarNotificacion(informe + ".");
+            for (String rechazo : informe.rechazos)
+                gui.agregarNotificacion("  " + rechazo);
+        }
+    }
+
+    /**
+     * Orden para controlar el comprador desde código externo a la plataforma: se entrega con
+     * AgentController.putO2AObject y se ejecuta en el hilo del agente.
+     */
+    public interface Orden {
+        void ejecutar(Comprador comprador);
+    }
+
+    private class ProcesarOrdenesBehaviour extends CyclicBehaviour {
+        @Override
+        public void action() {
+            Object objeto = getO2AObject();
+            if (objeto == null) {
+                block();
+                return;
+            }
+            if (objeto instanceof Orden orden)
+                orden.ejecutar(Comprador.this);
+            else
+                System.out.println(getLocalName() + ": objeto O2A no reconocido: " + objeto);
+        }
     }
 
     private void configurePreferences() {
         SwingUtilities.invokeLater(() -> {
             // Delegar la lógica completa a la GUI
-            String phoneNumber = gui.configureAndSetPhoneNumber();
+            String phoneNumber = ventana.configureAndSetPhoneNumber();
 
             if (phoneNumber != null) {
                 this.telefono= Integer.parseInt(phoneNumber);
                 gui.agregarNotificacion("Número de teléfono configurado: " + phoneNumber);
-                gui.showBookInputDialog(); // Mostrar la ventana de libros después
+                ventana.showBookInputDialog(); // Mostrar la ventana de libros después
             } else {
                 gui.agregarNotificacion("Configuración cancelada o número inválido.");
                 this.doDelete();
-                gui.dispose();
+                ventana.dispose();
             }
         });
     }
@@ -99,21 +252,69 @@ public class Comprador extends Agent {
 
 
     protected void registerInYellowPages() {
+        try {
+            DFService.register(this, getDescripcionServicio());
+            registrado = true;
+            registroPendiente = false;
+            System.out.println(getLocalName() + ": Registrado en las Páginas Amarillas.");
+        } catch (FIPAException fe) {
+            fe.printStackTrace();
+        }
+    }
+
+    /**
+     * Descripción para el DF con los títulos de interés como propiedades del servicio,
+     * para que el vendedor solo envíe las subastas de esos libros.
+     */
+    private DFAgentDescription getDescripcionServicio() {
         DFAgentDescription dfd = new DFAgentDescription();
         dfd.setName(getAID());
         ServiceDescription sd = new ServiceDescription();
         sd.setType("auction-participant");
         sd.setName("JADE-English-Auction");
+        // Lenguajes que entiende el comprador: el vendedor usa el compacto solo si aparece aquí
+        sd.addLanguages(codec.getName());
+        if (usarCodecCompacto)
+            sd.addLanguages(codecCompacto.getName());
+        preferencias.recorrer((titulo, precio) -> sd.addProperties(new Property(PROPIEDAD_LIBRO, titulo)));
         dfd.addServices(sd);
+        return dfd;
+    }
+
+    /**
+     * Marcar la lista de títulos de interés como cambiada. Se publica en el DF en el siguiente
+     * tick de PublicarRegistroBehaviour, así que varios cambios seguidos (compras, altas)
+     * cuestan una sola modificación y el hilo del agente no espera al DF al confirmar una compra.
+     */
+    private void actualizarRegistro() {
+        registroPendiente = true;
+    }
 
+    /**
+     * Publicar en el DF la lista de títulos de interés actual, si ha cambiado.
+     */
+    private void publicarRegistro() {
+        if (!registroPendiente || !registrado)
+            return;
+        registroPendiente = false;
         try {
-            DFService.register(this, dfd);
-            System.out.println(getLocalName() + ": Registrado en las Páginas Amarillas.");
+            DFService.modify(this, getDescripcionServicio());
         } catch (FIPAException fe) {
             fe.printStackTrace();
         }
     }
 
+    private class PublicarRegistroBehaviour extends TickerBehaviour {
+        PublicarRegistroBehaviour(long periodo) {
+            super(Comprador.this, periodo);
+        }
+
+        @Override
+        protected void onTick() {
+            publicarRegistro();
+        }
+    }
+
     private class ReceiveCFProposalBehaviour extends CyclicBehaviour {
         @Override
         public void action() {
@@ -122,42 +323,82 @@ public class Comprador extends Agent {
             ACLMessage msg = receive(template); // Recibir mensaje que coincida con la plantilla
 
             if (msg != null) {
-                // Crear un mensaje de respuesta basado en el mensaje recibido
-                ACLMessage reply = msg.createReply();
-                reply.setOntology(ontology.getName());
-                reply.setLanguage(codec.getName());
-                reply.setReplyWith("propose_" + System.currentTimeMillis());
-                try {
-                    // Extraer el contenido del mensaje usando el gestor de contenido
-                    Action a = (Action) getContentManager().extractContent(msg);
-                    DefaultOfertar ofertar = (DefaultOfertar) a.getAction();
-                    DefaultOferta oferta = (DefaultOferta) ofertar.getOferta();
-                    DefaultLibro libro = (DefaultLibro) oferta.getProducto();
-
-                    // Obtener detalles del libro ofertado
-                    String titulo = libro.getTitulo();
-                    float precio = libro.getPrecio();
-
-                    // Crear un objeto de tipo DefaultProponer para la respuesta
-                    DefaultProponer proponer = new DefaultProponer();
-                    proponer.setLibro(libro); // Asignar el libro al objeto "proponer"
-                    proponer.setRespuesta(shouldParticipate(titulo, precio));
-                    reply.setPerformative(ACLMessage.PROPOSE); // Definir el tipo de mensaje como "PROPOSE"
-                    // Rellenar el contenido del mensaje de respuesta con la acción "proponer"
-                    Action action = new Action(getAID(), proponer);
-                    getContentManager().fillContent(reply, action);
-                } catch (Codec.CodecException | OntologyException e) {
-                    // Manejar errores en caso de problemas con el contenido del mensaje
-                    sendNotUnderstood(msg);
-                    return;
-                }
-                send(reply);
+                // Con el pool de decodificación la respuesta se envía cuando el contenido está decodificado
+                if (decodificador != null)
+                    decodificador.decodificar(msg, Comprador.this::responderCfp);
+                else
+                    responderCfp(msg);
             } else {
                 block();
             }
         }
     }
 
+    /**
+     * Responder a un CFP con un PROPOSE (o a un CFP por lotes con un PROPOSE con una lista de Proponer).
+     */
+    private void responderCfp(ACLMessage msg) {
+        // Crear un mensaje de respuesta basado en el mensaje recibido
+        ACLMessage reply = msg.createReply();
+        reply.setOntology(ontology.getName());
+        reply.setLanguage(lenguajeRespuesta(msg));
+        // La respuesta conserva la conversación y la ronda del CFP (in-reply-to)
+        reply.setReplyWith(msg.getReplyWith() + "/" + getLocalName());
+        try {
+            // Extraer el contenido del mensaje usando el gestor de contenido
+            ContentElement contenido = extraerContenido(msg);
+            reply.setPerformative(ACLMessage.PROPOSE); // Definir el tipo de mensaje como "PROPOSE"
+            if (contenido instanceof ContentElementList ofertas) {
+                // CFP por lotes: una decisión por oferta, todas en un único PROPOSE
+                ContentElementList propuestas = new ContentElementList();
+                for (int i = 0; i < ofertas.size(); i++) {
+                    Action a = (Action) ofertas.get(i);
+                    propuestas.add(new Action(getAID(), proponer((DefaultOfertar) a.getAction(), msg.getProtocol())));
+                }
+                getContentManager().fillContent(reply, propuestas);
+            } else {
+                Action a = (Action) contenido;
+                // Rellenar el contenido del mensaje de respuesta con la acción "proponer"
+                Action action = new Action(getAID(), proponer((DefaultOfertar) a.getAction(), msg.getProtocol()));
+                getContentManager().fillContent(reply, action);
+            }
+        } catch (Codec.CodecException | OntologyException e) {
+            // Manejar errores en caso de problemas con el contenido del mensaje
+            sendNotUnderstood(msg);
+            return;
+        }
+        enviar(reply);
+    }
+
+    /**
+     * Decidir la respuesta a una oferta. El protocolo es el del CFP (la modalidad de la subasta).
+     */
+    private DefaultProponer proponer(DefaultOfertar ofertar, String protocolo) {
+        cfpRecibidos.incrementar();
+        DefaultOferta oferta = (DefaultOferta) ofertar.getOferta();
+        DefaultLibro libro = (DefaultLibro) oferta.getProducto();
+
+        // Obtener detalles del libro ofertado
+        String titulo = libro.getTitulo();
+        float precio = libro.getPrecio();
+
+        // Crear un objeto de tipo DefaultProponer para la respuesta
+        DefaultProponer proponer = new DefaultProponer();
+        proponer.setLibro(libro); // Asignar el libro al objeto "proponer"
+        boolean participar = shouldParticipate(titulo, precio);
+        proponer.setRespuesta(participar);
+        if (participar && Vendedor.SUBASTA_SOBRE_CERRADO.equals(protocolo)) {
+            // Sobre cerrado: la puja es el precio máximo (el precio ofertado es el de salida)
+            DefaultLibro puja = new DefaultLibro();
+            puja.setTitulo(titulo);
+            puja.setPrecio(preferencias.precioMaximo(titulo));
+            proponer.setLibro(puja);
+        }
+        if (participar)
+            pujasEnviadas.incrementar();
+        return proponer;
+    }
+
     private class ReceiveInformsBehaviour extends CyclicBehaviour {
         @Override
         public void action() {
@@ -166,9 +407,13 @@ public class Comprador extends Agent {
             ACLMessage msg = receive(template);
 
             if (msg != null) {
+                if (Vendedor.PROTOCOLO_TRASLADO.equals(msg.getProtocol())) {
+                    subastaTrasladada(msg);
+                    return;
+                }
                 try {
                     // Obtener el contenido del mensaje como un objeto
-                    ContentElement content = getContentManager().extractContent(msg);
+                    ContentElement content = extraerContenido(msg);
                     if (content instanceof Action) {
                         Action action = (Action) content;
                         Concept concept = action.getAction();
@@ -181,12 +426,11 @@ public class Comprador extends Agent {
                             double startingPrice = libro.getPrecio();
                             double increment = nuevaSubasta.getIncremento();
 
-                            gui.updateAuctionStatus(bookTitle, msg.getSender().getLocalName(), startingPrice, "Subasta Iniciada", 0);
-                            for (DefaultLibro preferencia : bookPreferences) {
-                                if (preferencia.getTitulo().equals(bookTitle)) {
-                                    gui.agregarNotificacion("Subasta iniciada: '" + bookTitle + "', precio inicial: " + startingPrice + ", incremento: " + increment);
-                                    break;
-                                }
+                            gui.updateAuctionStatus(bookTitle, nombreVendedor(msg), startingPrice, "Subasta Iniciada", 0);
+                            if (preferencias.contiene(bookTitle)) {
+                                gui.agregarNotificacion("Subasta iniciada: '" + bookTitle + "', precio inicial: " + startingPrice + ", incremento: " + increment);
+                                if (pujaAutomatica)
+                                    enviarPujaAutomatica(msg, bookTitle);
                             }
                         } else
                             if (concept instanceof DefaultInformarRonda informarRonda) {
@@ -200,7 +444,7 @@ public class Comprador extends Agent {
                             jade.util.leap.List pujadores = ronda.getPujadores();
                             String bidders = pujadores.toString();
 
-                            gui.updateAuctionStatus(bookTitle, msg.getSender().getLocalName(), currentPrice, bidders, rondaNumero);
+                            gui.updateAuctionStatus(bookTitle, nombreVendedor(msg), currentPrice, bidders, rondaNumero);
                         } else if (concept instanceof DefaultInformarCompra informarCompra) {
                             // Procesar confirmación de compra
                             Libro libro = informarCompra.getLibro();
@@ -223,7 +467,12 @@ public class Comprador extends Agent {
                             String winner = informarFinal.getGanador();
                             int ronda = informarFinal.getNumeroRonda();
 
-                            gui.updateAuctionStatus(bookTitle, msg.getSender().getLocalName(), finalPrice, "Ganador: " + winner, ronda);
+                            gui.updateAuctionStatus(bookTitle, nombreVendedor(msg), finalPrice, ModeloHistorialRondas.PREFIJO_GANADOR + winner, ronda);
+                            olvidarPujaAutomatica(bookTitle, msg);
+                            if (getLocalName().equals(winner))
+                                subastasGanadas.incrementar();
+                            else
+                                subastasPerdidas.incrementar();
                             gui.agregarNotificacion("Subasta finalizada: '" + bookTitle + "', Ganador: " + winner + ", Precio final: " + finalPrice + ", Ronda: " + ronda);
                         } else {
                             throw new Exception("Concepto no reconocido en el mensaje INFORM");
@@ -238,13 +487,127 @@ public class Comprador extends Agent {
         }
     }
 
+    /**
+     * La subasta de un título ha pasado a otro fragmento del vendedor: la conversación actual
+     * termina sin ganador y el inicio llegará en una nueva.
+     */
+    private void subastaTrasladada(ACLMessage msg) {
+        String bookTitle = msg.getContent();
+        olvidarPujaAutomatica(bookTitle, msg);
+        if (librosGanadorRonda.remove(bookTitle) && librosGanadorRonda.isEmpty())
+            puedeSalir = true;
+        gui.agregarNotificacion("Subasta de '" + bookTitle + "' trasladada por " + nombreVendedor(msg) + "; continúa en una nueva conversación.");
+    }
+
+    /**
+     * Precio máximo enviado a un vendedor para una subasta en curso.
+     */
+    private static class PujaAutomatica {
+        final ACLMessage inicio;  // INFORM de inicio de la subasta
+        float techo;
+
+        PujaAutomatica(ACLMessage inicio, float techo) {
+            this.inicio = inicio;
+            this.techo = techo;
+        }
+    }
+
+    /**
+     * Enviar al vendedor el precio máximo para una subasta que acaba de empezar: un PROPOSE con
+     * el protocolo de puja automática y el precio máximo en el libro. El vendedor puja por el
+     * comprador en cada ronda sin enviarle el CFP.
+     */
+    private void enviarPujaAutomatica(ACLMessage inicio, String titulo) throws Codec.CodecException, OntologyException {
+        float techo = preferencias.precioMaximo(titulo);
+        enviarTecho(inicio, titulo, true, techo);
+        // Una subasta reiniciada empieza con otra conversación y sustituye a la anterior
+        pujasAutomaticas.computeIfAbsent(titulo, t -> new HashMap<>())
+                .put(inicio.getSender().getName(), new PujaAutomatica(inicio, techo));
+    }
+
+    private void enviarTecho(ACLMessage inicio, String titulo, boolean respuesta, float techo) throws Codec.CodecException, OntologyException {
+        ACLMessage propuesta = inicio.createReply();
+        propuesta.setPerformative(ACLMessage.PROPOSE);
+        propuesta.setProtocol(Vendedor.PROTOCOLO_PUJA_AUTOMATICA);
+        propuesta.setOntology(ontology.getName());
+        propuesta.setLanguage(lenguajeRespuesta(inicio));
+        propuesta.setReplyWith(inicio.getReplyWith() + "/" + getLocalName());
+        DefaultLibro libro = new DefaultLibro();
+        libro.setTitulo(titulo);
+        libro.setPrecio(techo);
+        DefaultProponer proponer = new DefaultProponer();
+        proponer.setLibro(libro);
+        proponer.setRespuesta(respuesta);
+        getContentManager().fillContent(propuesta, new Action(getAID(), proponer));
+        enviar(propuesta);
+    }
+
+    /**
+     * Llevar a las subastas en curso el cambio en un título buscado: si ya no se busca, se
+     * retira el precio máximo (respuesta negativa) para que el vendedor deje de pujar por el
+     * comprador; si su precio máximo ha cambiado, se envía el nuevo. Se omite la conversación
+     * indicada (la de la compra que ha quitado el título), o ninguna si es null.
+     */
+    private void revisarPujasAutomaticas(String titulo, String conversacionExcluida) {
+        Map<String, PujaAutomatica> vivas = pujasAutomaticas.get(titulo);
+        if (vivas == null)
+            return;
+        boolean buscado = preferencias.contiene(titulo);
+        float techo = buscado ? preferencias.precioMaximo(titulo) : 0;
+        for (PujaAutomatica puja : vivas.values()) {
+            if (puja.inicio.getConversationId() != null && puja.inicio.getConversationId().equals(conversacionExcluida))
+                continue;
+            if (buscado && puja.techo == techo)
+                continue;
+            try {
+                enviarTecho(puja.inicio, titulo, buscado, techo);
+                puja.techo = techo;
+            } catch (Codec.CodecException | OntologyException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!buscado)
+            pujasAutomaticas.remove(titulo);
+    }
+
+    /**
+     * La subasta de un vendedor ha terminado: su precio máximo ya no hay que actualizarlo.
+     */
+    private void olvidarPujaAutomatica(String titulo, ACLMessage msg) {
+        Map<String, PujaAutomatica> vivas = pujasAutomaticas.get(titulo);
+        if (vivas != null) {
+            vivas.remove(msg.getSender().getName());
+            if (vivas.isEmpty())
+                pujasAutomaticas.remove(titulo);
+        }
+    }
+
+    /**
+     * Nombre del vendedor de una subasta. Si el mensaje lo envía un fragmento de un vendedor
+     * repartido, se usa el nombre del vendedor coordinador.
+     */
+    private static String nombreVendedor(ACLMessage msg) {
+        String vendedor = msg.getUserDefinedParameter(Vendedor.PARAMETRO_VENDEDOR);
+        return vendedor != null ? vendedor : msg.getSender().getLocalName();
+    }
+
+    /**
+     * Responder en el mismo lenguaje del mensaje recibido si el comprador lo admite;
+     * en otro caso se vuelve a SL.
+     */
+    private String lenguajeRespuesta(ACLMessage msg) {
+        if (usarCodecCompacto && codecCompacto.getName().equals(msg.getLanguage()))
+            return codecCompacto.getName();
+        return codec.getName();
+    }
+
     private void sendNotUnderstood(ACLMessage msg) {
         ACLMessage reply = msg.createReply();
         reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
         String inreply= msg.getReplyWith();
         reply.setInReplyTo(inreply);
         reply.setContent("No se ha entendido el contenido del mensaje");
-        send(reply);
+        enviar(reply);
     }
 
     private class ReceiveRequestBehaviour extends CyclicBehaviour {
@@ -261,7 +624,7 @@ public class Comprador extends Agent {
                 boolean denegado=true;
                 ContentElement content = null;
                 try {
-                    content = getContentManager().extractContent(msg);
+                    content = extraerContenido(msg);
                     Action action = (Action) content;
                     Concept concept = action.getAction();
                     DefaultInformarCompra datosCompra = (DefaultInformarCompra) concept;
@@ -275,41 +638,31 @@ public class Comprador extends Agent {
                         return;
                 }
                 ACLMessage reply = msg.createReply();
-                reply.setReplyWith("datosCompra_" + System.currentTimeMillis());
+                reply.setReplyWith(msg.getReplyWith() + "/" + getLocalName());
                 reply.setOntology(ontology.getName());
-                reply.setLanguage(codec.getName());
-                // Actualizar la GUI con el estado de la compra confirmada
-                Iterator<DefaultLibro> iterator = bookPreferences.iterator();
-                while (iterator.hasNext()) {
-                    DefaultLibro lib = iterator.next();
-                    if (lib.getTitulo().equals(bookTitle)) {
-                        if (lib.getPrecio() >= finalPrice) {
-                            iterator.remove(); // Elimina el libro de forma segura
-                            reply.setPerformative(ACLMessage.AGREE);
-                            DefaultMandarDatosCompra mandarDatosCompra = new DefaultMandarDatosCompra();
-                            mandarDatosCompra.setTelefono(telefono);
-                            mandarDatosCompra.setLibro(libro);
-                            Action action = new Action(getAID(), mandarDatosCompra);
-                            try {
-                                getContentManager().fillContent(reply, action);
-                            } catch (Codec.CodecException | OntologyException e) {
-                                throw new RuntimeException(e);
-                            }
-                           /* System.out.println("Mensaje AGREE enviado: " + reply);
-                            System.out.println("Receptores: " + reply.getAllReceiver().next());
-                            System.out.println("Contenido: " + reply.getContent());
-*/
-                            send(reply);
-                            librosEsperandoConfirmaciones.add(bookTitle);
-                            denegado = false;
-                            break;
-                        }
+                reply.setLanguage(lenguajeRespuesta(msg));
+                // Aceptar la compra si el precio está cubierto; el libro deja de buscarse
+                if (preferencias.quitarSiCubre(bookTitle, finalPrice)) {
+                    reply.setPerformative(ACLMessage.AGREE);
+                    DefaultMandarDatosCompra mandarDatosCompra = new DefaultMandarDatosCompra();
+                    mandarDatosCompra.setTelefono(telefono);
+                    mandarDatosCompra.setLibro(libro);
+                    Action action = new Action(getAID(), mandarDatosCompra);
+                    try {
+                        getContentManager().fillContent(reply, action);
+                    } catch (Codec.CodecException | OntologyException e) {
+                        throw new RuntimeException(e);
                     }
+                    enviar(reply);
+                    // El título deja de publicarse en el DF y de pujarse en otras subastas después de responder
+                    actualizarRegistro();
+                    revisarPujasAutomaticas(bookTitle, msg.getConversationId());
+                    librosEsperandoConfirmaciones.add(bookTitle);
+                    denegado = false;
                 }
                 if(denegado){
-                    // Enviar un REFUSE para denegar la compra
-                    ACLMessage refuseReply = msg.createReply();
-                    refuseReply.setPerformative(ACLMessage.REFUSE);
+                    // Enviar un REFUSE para denegar la compra: el vendedor pasa al siguiente candidato
+                    reply.setPerformative(ACLMessage.REFUSE);
                     DefaultInformarCompra informarCompra = new DefaultInformarCompra();
                     informarCompra.setLibro(libro);
                     Action action = new Action(getAID(), informarCompra);
@@ -318,7 +671,7 @@ public class Comprador extends Agent {
                     } catch (Codec.CodecException | OntologyException e) {
                         throw new RuntimeException(e);
                     }
-                    send(refuseReply);
+                    enviar(reply);
                 }
             } else {
                 block();
@@ -339,20 +692,13 @@ public class Comprador extends Agent {
             if (msg != null) {
                 ContentElement content = null;
                 try {
-                    content = getContentManager().extractContent(msg);
+                    content = extraerContenido(msg);
                     Action action = (Action) content;
                     Concept concept = action.getAction();
                     DefaultResponderPropuesta respuestaPropuesta = (DefaultResponderPropuesta) concept;
                     Libro libro = respuestaPropuesta.getLibro();
                     booktitle=libro.getTitulo();
-                    boolean interes=false;
-                    for(DefaultLibro lib: bookPreferences){
-                        if(lib.getTitulo().equals(booktitle)){
-                            interes=true;
-                            break;
-                        }
-                    }
-                    if(!interes)return;
+                    if(!preferencias.contiene(booktitle))return;
                 } catch (Exception e) {
                     sendNotUnderstood(msg);
                     return;
@@ -373,12 +719,7 @@ public class Comprador extends Agent {
     }
 
     private boolean shouldParticipate(String namebook, double price) {
-        for(DefaultLibro libro: bookPreferences){
-            if(libro.getTitulo().equals(namebook))
-                if (libro.getPrecio() >= price)
-                    return true;
-        }
-        return false;
+        return preferencias.participa(namebook, price);
     }
 
     @Override
@@ -390,13 +731,91 @@ public class Comprador extends Agent {
         }
         System.out.println(getLocalName() + ": desregistrado en las Páginas Amarillas.");
         gui.agregarNotificacion(" Terminando...");
+        if (decodificador != null)
+            decodificador.cerrar();
+        metricas.retirar();
+    }
+
+    public void anhadirLibro(String nombreLibro, double price) {
+        // Se llama desde la GUI o desde una orden: las preferencias, el DF y las pujas automáticas
+        // se actualizan desde el hilo del agente
+        addBehaviour(new OneShotBehaviour() {
+            @Override
+            public void action() {
+                agregarPreferencia(nombreLibro, price);
+                actualizarRegistro();
+                revisarPujasAutomaticas(nombreLibro, null);
+            }
+        });
+    }
+
+    private void agregarPreferencia(String nombreLibro, double price) {
+        preferencias.agregar(nombreLibro, (float) price);
+        gui.libroAnhadido(nombreLibro, price);
+    }
+
+    /**
+     * Enviar un mensaje y avisar al observador de cuántos receptores tiene.
+     */
+    private void enviar(ACLMessage msg) {
+        send(msg);
+        int receptores = 0;
+        Iterator<?> it = msg.getAllReceiver();
+        while (it.hasNext()) {
+            it.next();
+            receptores++;
+        }
+        mensajesEnviados.sumar(receptores);
+        gui.mensajeEnviado(msg.getPerformative(), receptores);
+    }
+
+    /**
+     * Decodificar el contenido de un mensaje midiendo el tiempo empleado. Con el pool activo,
+     * los CFP llegan ya decodificados.
+     */
+    private ContentElement extraerContenido(ACLMessage msg) throws Codec.CodecException, OntologyException {
+        if (decodificador != null)
+            return decodificador.extraer(msg, getContentManager());
+        long inicio = System.nanoTime();
+        try {
+            return getContentManager().extractContent(msg);
+        } finally {
+            decodificacion.registrar((System.nanoTime() - inicio) / 1000);
+        }
+    }
+
+    /**
+     * ContentManager para un hilo del pool de decodificación, con instancias propias de los codecs.
+     */
+    private ContentManager crearGestorContenido() {
+        ContentManager gestor = new ContentManager();
+        gestor.registerLanguage(new SLCodec());
+        gestor.registerLanguage(new LEAPCodec());
+        gestor.registerOntology(ontology);
+        return gestor;
     }
 
-    protected void anhadirLibro(String nombreLibro, double price) {
-        DefaultLibro libro= new DefaultLibro();
-        libro.setPrecio((float) price);
-        libro.setTitulo(nombreLibro);
-        this.bookPreferences.add(libro);
+    /**
+     * Crear y publicar las métricas del comprador.
+     */
+    private void crearMetricas(Argumentos argumentos) {
+        metricas = new Metricas(getLocalName());
+        cfpRecibidos = metricas.contador("comprador_cfp_recibidos_total", "Ofertas recibidas en CFP (una por subasta en los CFP por lotes)");
+        pujasEnviadas = metricas.contador("comprador_pujas_total", "PROPOSE enviados aceptando el precio");
+        subastasGanadas = metricas.contador("comprador_subastas_ganadas_total", "Subastas terminadas con este comprador como ganador");
+        subastasPerdidas = metricas.contador("comprador_subastas_perdidas_total", "Subastas seguidas que ha ganado otro comprador");
+        mensajesEnviados = metricas.contador("comprador_mensajes_enviados_total", "Mensajes enviados (por receptor)");
+        decodificacion = metricas.histograma("comprador_decodificacion_us", "Tiempo de decodificación del contenido",
+                10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000);
+        metricas.publicar();
+        int puerto = (int) argumentos.entero("puertoMetricas", 0);
+        if (puerto > 0) {
+            try {
+                Metricas.iniciarServidor(puerto);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     protected void notificarSalida(){
@@ -408,6 +827,7 @@ public class Comprador extends Agent {
         public void action() {
             try {
                 DFService.deregister(myAgent);
+                registrado = false;
                 gui.agregarNotificacion("Desregistrado de las Páginas Amarillas.");
             } catch (FIPAException e) {
                 e.printStackTrace();
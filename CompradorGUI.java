@@ -3,10 +3,15 @@ package codigo;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-public class CompradorGUI extends JFrame {
+public class CompradorGUI extends JFrame implements ObservadorComprador {
     private final JPanel auctionPanelContainer; // Contenedor de paneles para las subastas
     private final JTextField bookTitleField;
     private final JTextField maxPriceField;
@@ -17,6 +22,7 @@ public class CompradorGUI extends JFrame {
     private final JTextField searchField;  // Campo de texto para búsqueda
     private final JButton searchButton;    // Botón de búsqueda
     private final JTextArea areaMensajes;
+    private final ColaNotificaciones notificaciones; // Notificaciones pendientes de mostrar
     private final JButton showAllButton;
     private final JButton showInterestedButton; // Botón para mostrar solo libros de interés
     private final JButton enterButton; // Botón para Entrar
@@ -26,6 +32,7 @@ public class CompradorGUI extends JFrame {
 
     // Mapa para almacenar los paneles de cada subasta (por libro)
     private final Map<String, JPanel> bookPanels = new HashMap<>();
+    private static final int HISTORIAL_RONDAS = 20; // Rondas que se conservan en la tabla de cada subasta
 
     public CompradorGUI(Comprador comp) {
         this.comprador = comp;
@@ -96,6 +103,15 @@ public class CompradorGUI extends JFrame {
         addButton.addActionListener(e -> addBook());
         leftInputPanel.add(addButton);
 
+        // Botón para importar un CSV de libros de interés
+        JButton importButton = new JButton("Importar Libros...");
+        importButton.addActionListener(e -> {
+            JFileChooser selector = new JFileChooser();
+            if (selector.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+                comprador.importarPreferencias(selector.getSelectedFile().toPath());
+        });
+        leftInputPanel.add(importButton);
+
         // Campo de búsqueda
         leftInputPanel.add(new JLabel("Buscar libro:"));
         searchField = new JTextField(10);
@@ -159,6 +175,7 @@ public class CompradorGUI extends JFrame {
         // Área de notificaciones
         areaMensajes = new JTextArea();
         areaMensajes.setEditable(false); // Solo lectura
+        notificaciones = new ColaNotificaciones(areaMensajes);
         JScrollPane scrollMensajes = new JScrollPane(areaMensajes);
         scrollMensajes.setBorder(BorderFactory.createTitledBorder("Notificaciones"));
         scrollMensajes.setPreferredSize(new Dimension(800, 100));
@@ -216,17 +233,47 @@ public class CompradorGUI extends JFrame {
 
         try {
             double maxPrice = Double.parseDouble(maxPriceStr);
+            // El agente avisa con libroAnhadido para mostrarlo en la tabla
             this.comprador.anhadirLibro(bookTitle, maxPrice);
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Precio no válido.", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
 
+    public void libroAnhadido(String bookTitle, double maxPrice) {
+        SwingUtilities.invokeLater(() -> {
             // Agregar libro a la tabla de libros interesados
             interestedBooksModel.addRow(new Object[]{bookTitle, maxPrice});
 
             if (!bookPanels.containsKey(bookTitle)) {
                 createNewBookPanel(bookTitle);
             }
-        } catch (NumberFormatException ex) {
-            JOptionPane.showMessageDialog(this, "Precio no válido.", "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        });
+    }
+
+    /**
+     * Aplicar un lote importado a la tabla de libros de interés con una sola pasada.
+     * Los paneles de subasta no se crean aquí, sino al recibir la primera ronda.
+     */
+    public void preferenciasImportadas(List<ImportadorCsv.Fila> puestas, List<String> quitadas) {
+        SwingUtilities.invokeLater(() -> {
+            Map<String, Double> precios = new HashMap<>();
+            for (ImportadorCsv.Fila fila : puestas)
+                precios.put(fila.titulo, (double) fila.precio);
+            Set<String> borrar = new HashSet<>(quitadas);
+            for (int i = interestedBooksModel.getRowCount() - 1; i >= 0; i--) {
+                Object titulo = interestedBooksModel.getValueAt(i, 0);
+                Double precio = precios.remove(titulo);
+                if (precio != null)
+                    interestedBooksModel.setValueAt(precio, i, 1);
+                else if (borrar.contains(titulo))
+                    interestedBooksModel.removeRow(i);
+            }
+            for (ImportadorCsv.Fila fila : puestas) {
+                if (precios.containsKey(fila.titulo))
+                    interestedBooksModel.addRow(new Object[]{fila.titulo, (double) fila.precio});
+            }
+        });
     }
 
     private void createNewBookPanel(String bookTitle) {
@@ -234,10 +281,8 @@ public class CompradorGUI extends JFrame {
         bookPanel.setLayout(new BoxLayout(bookPanel, BoxLayout.Y_AXIS));
         bookPanel.setBorder(BorderFactory.createTitledBorder(bookTitle));
 
-        // Crear la tabla sin la columna "Ganador"
-        DefaultTableModel tableModel = new DefaultTableModel(
-                new Object[]{"Libro", "Vendedor", "Precio Actual", "Pujadores", "Ronda"}, 0
-        );
+        // Crear la tabla sin la columna "Ganador": resumen y últimas rondas
+        ModeloHistorialRondas tableModel = new ModeloHistorialRondas(bookTitle, HISTORIAL_RONDAS);
         JTable auctionTable = new JTable(tableModel);
         auctionTable.setEnabled(false); // Tabla no editable
         // Ajustar el ancho de las columnas
@@ -258,79 +303,74 @@ public class CompradorGUI extends JFrame {
     }
 
     public void updateAuctionStatus(String bookTitle, String sellerName, double currentPrice, String bidders, int roundNumber) {
-        // Obtener el panel del libro. Si no existe, se crea uno nuevo.
-        JPanel bookPanel = bookPanels.get(bookTitle);
-
-        if (bookPanel == null) {
-            // Si no existe el panel, creamos uno nuevo.
-            createNewBookPanel(bookTitle);
-            // Ahora buscamos el panel recién creado
-            bookPanel = bookPanels.get(bookTitle);
-        }
-
-        // Obtener la tabla dentro del panel del libro.
-        JTable auctionTable = (JTable) ((JScrollPane) bookPanel.getComponent(0)).getViewport().getView();
-        DefaultTableModel model = (DefaultTableModel) auctionTable.getModel();
-
-        // Agregar una nueva fila a la tabla con la información de la subasta.
-        Object[] rowData = {bookTitle, sellerName, currentPrice, bidders, roundNumber};
-        model.addRow(rowData);
-
-        // Obtener el nombre del comprador
-        String buyerName = this.comprador.getLocalName();
-
-        // Buscar la fila que contiene al comprador y cambiar su color de fondo
-        for (int row = 0; row < model.getRowCount(); row++) {
-            String biddersList = (String) model.getValueAt(row, 3); // Columna de pujadores
+        SwingUtilities.invokeLater(() -> {
+            // Obtener el panel del libro. Si no existe, se crea uno nuevo.
+            JPanel bookPanel = bookPanels.get(bookTitle);
+            boolean nuevo = bookPanel == null;
 
-            // Verificar si el nombre del comprador está en la lista de pujadores
-            if(bidders.contains("Ganador")){
-                if (biddersList.contains(buyerName)){
-                    auctionTable.setSelectionBackground(Color.BLUE); // Establecer el color de la selección (amarillo claro)
-                    auctionTable.setSelectionForeground(Color.BLACK); // Establecer el color del texto al seleccionarlo (opcional)
-                    auctionTable.setBackground(Color.decode("#DDEEFF"));
-                }else {
+            if (nuevo) {
+                // Si no existe el panel, creamos uno nuevo.
+                createNewBookPanel(bookTitle);
+                // Ahora buscamos el panel recién creado
+                bookPanel = bookPanels.get(bookTitle);
+            }
 
-                    auctionTable.setSelectionBackground(Color.RED); // Establecer el color de la selección (amarillo claro)
-                    auctionTable.setSelectionForeground(Color.BLACK); // Establecer el color del texto al seleccionarlo (opcional)
-                    auctionTable.setBackground(Color.decode("#FFDDDD"));
+            // Obtener la tabla dentro del panel del libro.
+            JTable auctionTable = (JTable) ((JScrollPane) bookPanel.getComponent(0)).getViewport().getView();
+            ModeloHistorialRondas model = (ModeloHistorialRondas) auctionTable.getModel();
+            ModeloHistorialRondas.Resaltado anterior = model.getResaltado();
+
+            // Agregar la ronda al historial; el modelo calcula la situación del comprador
+            model.agregarRonda(bookTitle, sellerName, currentPrice, bidders, roundNumber, this.comprador.getLocalName());
+
+            // Cambiar los colores de la tabla solo si ha cambiado la situación
+            if (model.getResaltado() != anterior) {
+                switch (model.getResaltado()) {
+                    case GANADOR -> colorearTabla(auctionTable, Color.BLUE, "#DDEEFF");
+                    case PERDEDOR -> colorearTabla(auctionTable, Color.RED, "#FFDDDD");
+                    case PARTICIPANDO -> colorearTabla(auctionTable, Color.YELLOW, "#FFFF99"); // Amarillo claro
+                    case SUPERADO -> colorearTabla(auctionTable, Color.ORANGE, "#FFE5B4");
+                    default -> {
+                    }
                 }
             }
-            else if (biddersList.contains(buyerName)) {
-                // Cambiar el color de fondo de la fila a amarillo claro
-                auctionTable.setSelectionBackground(Color.YELLOW); // Establecer el color de la selección (amarillo claro)
-                auctionTable.setSelectionForeground(Color.BLACK); // Establecer el color del texto al seleccionarlo (opcional)
-                auctionTable.setBackground(Color.decode("#FFFF99")); // Establecer el color de fondo de la fila (amarillo claro)
-                break; // Salir del bucle después de encontrar al comprador
-            }
 
-        }
+            // Solo hace falta recolocar los paneles si se ha creado uno nuevo
+            if (nuevo) {
+                auctionPanelContainer.revalidate();
+                auctionPanelContainer.repaint();
+            }
+        });
+    }
 
-        // Actualizar la vista de los paneles
-        auctionPanelContainer.revalidate();
-        auctionPanelContainer.repaint();
+    private void colorearTabla(JTable auctionTable, Color seleccion, String fondo) {
+        auctionTable.setSelectionBackground(seleccion);
+        auctionTable.setSelectionForeground(Color.BLACK);
+        auctionTable.setBackground(Color.decode(fondo));
     }
 
 
 
     public void markBookAsPurchased(String bookTitle, double finalPrice) {
-        // Eliminar el libro de la tabla de interesados
-        for (int i = 0; i < interestedBooksModel.getRowCount(); i++) {
-            if (interestedBooksModel.getValueAt(i, 0).equals(bookTitle)) {
-                // Obtener el precio como Double
-                Object priceObject = interestedBooksModel.getValueAt(i, 1);
-                if (priceObject instanceof Number) {
-                    double maxPrice = ((Number) priceObject).doubleValue();
-                    if (maxPrice >= finalPrice) {
-                        interestedBooksModel.removeRow(i);
-                        break; // Salir del bucle una vez encontrado
+        SwingUtilities.invokeLater(() -> {
+            // Eliminar el libro de la tabla de interesados
+            for (int i = 0; i < interestedBooksModel.getRowCount(); i++) {
+                if (interestedBooksModel.getValueAt(i, 0).equals(bookTitle)) {
+                    // Obtener el precio como Double
+                    Object priceObject = interestedBooksModel.getValueAt(i, 1);
+                    if (priceObject instanceof Number) {
+                        double maxPrice = ((Number) priceObject).doubleValue();
+                        if (maxPrice >= finalPrice) {
+                            interestedBooksModel.removeRow(i);
+                            break; // Salir del bucle una vez encontrado
+                        }
                     }
-                }
 
+                }
             }
-        }
-        // Agregar el libro a la tabla de comprados
-        purchasedBooksModel.addRow(new Object[]{bookTitle, finalPrice});
+            // Agregar el libro a la tabla de comprados
+            purchasedBooksModel.addRow(new Object[]{bookTitle, finalPrice});
+        });
     }
 
     // Método para buscar un libro y hacer visible la subasta
@@ -398,15 +438,14 @@ public class CompradorGUI extends JFrame {
 
 
     public void agregarNotificacion(String mensaje) {
-        // Añadir el mensaje al área de mensajes
-        areaMensajes.append(mensaje + "\n");
-        // Asegurarse de que el último mensaje sea visible
-        areaMensajes.setCaretPosition(areaMensajes.getDocument().getLength());
+        // Encolar el mensaje: se muestra en el siguiente volcado del área de mensajes
+        notificaciones.agregar(mensaje);
     }
 
     private void handleExitAction() {
             if(comprador.puedeSalir) {
                 comprador.notificarSalida();
+                notificaciones.detener();
                 dispose(); // Libera los recursos y cierra la ventana
             }else{
                 // Mostrar ventana de error con un mensaje
@@ -419,6 +458,17 @@ public class CompradorGUI extends JFrame {
             }
     }
 
-
-
+    /**
+     * Copiar las notificaciones a un fichero que rota al superar el tamaño máximo.
+     */
+    public void volcarNotificacionesA(Path fichero) {
+        // El fichero solo se usa desde el hilo de Swing, igual que el volcado
+        SwingUtilities.invokeLater(() -> {
+            try {
+                notificaciones.volcarAFichero(fichero, ColaNotificaciones.TAMANO_FICHERO);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
 }
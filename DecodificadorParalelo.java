@@ -0,0 +1,152 @@
+package codigo;
+
+import jade.content.ContentElement;
+import jade.content.ContentManager;
+import jade.content.lang.Codec;
+import jade.content.onto.OntologyException;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Decodificación del contenido de los mensajes en un pool de hilos acotado. Los mensajes
+ * se entregan al pool desde el hilo del agente; cada hilo decodifica con su propio
+ * ContentManager (los codecs no son seguros entre hilos) y marca el mensaje como listo.
+ * Este comportamiento llama al manejador de cada mensaje en el hilo del agente, de modo que
+ * el estado de las subastas sigue teniendo un solo escritor, y en el orden de llegada: un
+ * mensaje decodificado antes que otro anterior espera a que este se entregue. Así la primera
+ * puja de una ronda sigue siendo la primera que llegó al buzón, no la primera decodificada.
+ */
+public class DecodificadorParalelo extends CyclicBehaviour {
+
+    /**
+     * Mensaje decodificado pendiente de entregar. Si la decodificación falla, el error
+     * se relanza cuando el manejador pide el contenido.
+     */
+    private static class Decodificado {
+        final ACLMessage msg;
+        final DespachadorMensajes.Manejador manejador;
+        ContentElement contenido;
+        Exception error;
+        volatile boolean listo;  // Se escribe tras contenido y error: al leerlo a true, ambos son visibles
+
+        Decodificado(ACLMessage msg, DespachadorMensajes.Manejador manejador) {
+            this.msg = msg;
+            this.manejador = manejador;
+        }
+    }
+
+    private static final long ESPERA_MAXIMA = 20;  // Bloqueo máximo con decodificaciones en curso (ms)
+
+    private final ForkJoinPool pool;
+    private final ThreadLocal<ContentManager> gestores;
+    private final ArrayDeque<Decodificado> enCurso = new ArrayDeque<>();  // En orden de llegada; solo hilo del agente
+    private final AtomicInteger pendientes = new AtomicInteger();
+    private final Metricas.Histograma duracion;  // Tiempo de cada decodificación (us); puede ser null
+    private final int tamanoLote;
+    private Decodificado actual;  // Mensaje cuyo manejador se está ejecutando
+    private long entregados = 0;
+
+    /**
+     * @param hilos    tamaño del pool
+     * @param gestor   crea el ContentManager de cada hilo, con los mismos lenguajes y ontología que el del agente
+     * @param duracion histograma en el que registrar el tiempo de cada decodificación, o null
+     */
+    public DecodificadorParalelo(Agent agente, int hilos, int tamanoLote, Supplier<ContentManager> gestor, Metricas.Histograma duracion) {
+        super(agente);
+        this.pool = new ForkJoinPool(hilos);
+        this.gestores = ThreadLocal.withInitial(gestor);
+        this.tamanoLote = tamanoLote;
+        this.duracion = duracion;
+    }
+
+    /**
+     * Decodificar el mensaje en el pool y llamar después al manejador en el hilo del agente.
+     */
+    public void decodificar(ACLMessage msg, DespachadorMensajes.Manejador manejador) {
+        Decodificado decodificado = new Decodificado(msg, manejador);
+        enCurso.add(decodificado);
+        pendientes.incrementAndGet();
+        pool.execute(() -> {
+            try {
+                decodificado.contenido = extraerMedido(msg, gestores.get());
+            } catch (Exception e) {
+                decodificado.error = e;
+            }
+            decodificado.listo = true;
+            restart();
+        });
+    }
+
+    private ContentElement extraerMedido(ACLMessage msg, ContentManager gestor) throws Codec.CodecException, OntologyException {
+        long inicio = System.nanoTime();
+        try {
+            return gestor.extractContent(msg);
+        } finally {
+            if (duracion != null)
+                duracion.registrar((System.nanoTime() - inicio) / 1000);
+        }
+    }
+
+    /**
+     * Contenido del mensaje. Dentro del manejador de un mensaje decodificado por el pool se
+     * devuelve lo ya decodificado; cualquier otro mensaje se decodifica con el ContentManager indicado.
+     */
+    public ContentElement extraer(ACLMessage msg, ContentManager gestor) throws Codec.CodecException, OntologyException {
+        if (actual == null || actual.msg != msg)
+            return extraerMedido(msg, gestor);
+        if (actual.error instanceof Codec.CodecException e)
+            throw e;
+        if (actual.error instanceof OntologyException e)
+            throw e;
+        if (actual.error != null)
+            throw new RuntimeException(actual.error);
+        return actual.contenido;
+    }
+
+    @Override
+    public void action() {
+        int procesados = 0;
+        Decodificado decodificado;
+        while (procesados < tamanoLote && (decodificado = enCurso.peek()) != null && decodificado.listo) {
+            enCurso.poll();
+            pendientes.decrementAndGet();
+            actual = decodificado;
+            try {
+                decodificado.manejador.manejar(decodificado.msg);
+            } finally {
+                actual = null;
+            }
+            procesados++;
+        }
+        entregados += procesados;
+        // Cada resultado nuevo reactiva el comportamiento. Con decodificaciones en curso se
+        // bloquea con límite, por si la reactivación llega mientras se recorre la cola.
+        if (procesados == 0) {
+            if (pendientes.get() > 0)
+                block(ESPERA_MAXIMA);
+            else
+                block();
+        }
+    }
+
+    /**
+     * Mensajes entregados al pool y aún no entregados a su manejador.
+     */
+    public int getPendientes() {
+        return pendientes.get();
+    }
+
+    public long getEntregados() {
+        return entregados;
+    }
+
+    public void cerrar() {
+        pool.shutdownNow();
+    }
+}
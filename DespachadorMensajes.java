@@ -0,0 +1,155 @@
+package codigo;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Comportamiento único de recepción: vacía la cola del agente por lotes y entrega cada
+ * mensaje a su manejador según el conversation-id o, si no hay ruta para él, según la
+ * performativa. Lleva la cuenta de la profundidad de la cola y de la latencia de cada manejador.
+ */
+public class DespachadorMensajes extends CyclicBehaviour {
+
+    /**
+     * Manejador de un tipo de mensaje. Se ejecuta en el hilo del agente.
+     */
+    public interface Manejador {
+        void manejar(ACLMessage msg);
+    }
+
+    /**
+     * Ruta registrada con sus contadores.
+     */
+    public static class Ruta {
+        private final String nombre;
+        private final Manejador manejador;
+        private long mensajes = 0;
+        private long nanos = 0;
+        private long maxNanos = 0;
+
+        private Ruta(String nombre, Manejador manejador) {
+            this.nombre = nombre;
+            this.manejador = manejador;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public long getMensajes() {
+            return mensajes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+
+    private static final int NUM_PERFORMATIVAS = 22;  // ACLMessage.ACCEPT_PROPOSAL .. ACLMessage.PROPAGATE
+
+    private final Ruta[] porPerformativa = new Ruta[NUM_PERFORMATIVAS];
+    private final Map<String, Ruta> porConversacion = new HashMap<>();
+    private final List<Ruta> rutas = new ArrayList<>();
+    private final int tamanoLote;
+    private int profundidadCola = 0;
+    private int maxProfundidadCola = 0;
+    private long sinManejador = 0;
+
+    public DespachadorMensajes(Agent agente, int tamanoLote) {
+        super(agente);
+        this.tamanoLote = tamanoLote;
+    }
+
+    public void registrar(int performativa, String nombre, Manejador manejador) {
+        Ruta ruta = new Ruta(nombre, manejador);
+        porPerformativa[performativa] = ruta;
+        rutas.add(ruta);
+    }
+
+    public void registrarConversacion(String conversationId, String nombre, Manejador manejador) {
+        Ruta ruta = new Ruta(nombre, manejador);
+        porConversacion.put(conversationId, ruta);
+        rutas.add(ruta);
+    }
+
+    @Override
+    public void action() {
+        profundidadCola = myAgent.getCurQueueSize();
+        if (profundidadCola > maxProfundidadCola)
+            maxProfundidadCola = profundidadCola;
+
+        int procesados = 0;
+        ACLMessage msg;
+        while (procesados < tamanoLote && (msg = myAgent.receive()) != null) {
+            despachar(msg);
+            procesados++;
+        }
+        // Si el lote se ha llenado se cede el turno al resto de comportamientos sin bloquear
+        if (procesados == 0)
+            block();
+    }
+
+    private void despachar(ACLMessage msg) {
+        Ruta ruta = null;
+        String conversationId = msg.getConversationId();
+        if (conversationId != null)
+            ruta = porConversacion.get(conversationId);
+        int performativa = msg.getPerformative();
+        if (ruta == null && performativa >= 0 && performativa < NUM_PERFORMATIVAS)
+            ruta = porPerformativa[performativa];
+        if (ruta == null) {
+            sinManejador++;
+            System.out.println(myAgent.getLocalName() + ": mensaje sin manejador ("
+                    + ACLMessage.getPerformative(performativa) + ") de " + msg.getSender().getLocalName());
+            return;
+        }
+        long inicio = System.nanoTime();
+        ruta.manejador.manejar(msg);
+        long duracion = System.nanoTime() - inicio;
+        ruta.mensajes++;
+        ruta.nanos += duracion;
+        if (duracion > ruta.maxNanos)
+            ruta.maxNanos = duracion;
+    }
+
+    public int getProfundidadCola() {
+        return profundidadCola;
+    }
+
+    public int getMaxProfundidadCola() {
+        return maxProfundidadCola;
+    }
+
+    public long getSinManejador() {
+        return sinManejador;
+    }
+
+    public List<Ruta> getRutas() {
+        return rutas;
+    }
+
+    /**
+     * Resumen legible de los contadores del despachador.
+     */
+    public String getEstadisticas() {
+        StringBuilder sb = new StringBuilder("Despachador: cola=" + profundidadCola
+                + " (máx. " + maxProfundidadCola + "), sin manejador=" + sinManejador);
+        for (Ruta ruta : rutas) {
+            double mediaUs = ruta.mensajes == 0 ? 0 : ruta.nanos / 1e3 / ruta.mensajes;
+            sb.append("\n  ").append(ruta.nombre).append(": ").append(ruta.mensajes).append(" mensajes, ")
+                    .append(String.format("%.1f", mediaUs)).append(" us de media, ")
+                    .append(String.format("%.1f", ruta.maxNanos / 1e3)).append(" us máx.");
+        }
+        return sb.toString();
+    }
+}
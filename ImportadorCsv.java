@@ -0,0 +1,287 @@
+package codigo;
+
+import jade.core.Agent;
+import jade.core.behaviours.SimpleBehaviour;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Importación de un fichero CSV de libros ("título,precio[,incremento]") sin cargarlo entero
+ * en memoria: en cada ejecución del comportamiento se lee un lote de líneas y se entrega al
+ * destino, de modo que el agente sigue atendiendo mensajes durante la importación.
+ *
+ * El separador puede ser ',' o ';' (se decide con la primera línea de datos), los campos
+ * pueden ir entre comillas dobles y se ignoran las líneas vacías, las que empiezan por '#'
+ * y una cabecera opcional. El estado recibido guarda lo importado la vez anterior del mismo
+ * fichero: solo se entregan las filas nuevas o cambiadas, y como bajas los títulos que ya no
+ * aparecen. Al terminar, el estado queda con el contenido del fichero.
+ */
+public class ImportadorCsv extends SimpleBehaviour {
+    public static final int TAMANO_LOTE = 1000;  // Líneas leídas por ejecución
+    public static final int MAX_RECHAZOS = 100;  // Filas rechazadas que se detallan en el informe
+
+    /**
+     * Fila válida del fichero. Sin columna de incremento, el incremento es 0.
+     */
+    public static class Fila {
+        public final String titulo;
+        public final float precio;
+        public final float incremento;
+
+        public Fila(String titulo, float precio, float incremento) {
+            this.titulo = titulo;
+            this.precio = precio;
+            this.incremento = incremento;
+        }
+
+        boolean igual(Fila otra) {
+            return Float.compare(precio, otra.precio) == 0 && Float.compare(incremento, otra.incremento) == 0;
+        }
+    }
+
+    /**
+     * Receptor de los lotes. Se llama en el hilo del agente.
+     */
+    public interface Destino {
+        void lote(List<Fila> altas, List<Fila> cambios, List<String> bajas);
+
+        void terminada(Informe informe);
+    }
+
+    /**
+     * Resultado de una importación.
+     */
+    public static class Informe {
+        public final Path fichero;
+        public int lineas = 0;
+        public int altas = 0;
+        public int cambios = 0;
+        public int sinCambios = 0;
+        public int bajas = 0;
+        public int rechazadas = 0;
+        public final List<String> rechazos = new ArrayList<>();  // Las primeras MAX_RECHAZOS: "línea N: motivo"
+        public String error;  // Error de lectura; las bajas no se aplican si la lectura no se completa
+        public long milisegundos;
+
+        Informe(Path fichero) {
+            this.fichero = fichero;
+        }
+
+        @Override
+        public String toString() {
+            String texto = "Importación de '" + fichero + "': " + altas + " altas, " + cambios + " cambios, "
+                    + bajas + " bajas, " + sinCambios + " sin cambios, " + rechazadas + " filas rechazadas ("
+                    + lineas + " líneas en " + milisegundos + " ms)";
+            return error == null ? texto : texto + ". Error: " + error;
+        }
+    }
+
+    private final Path fichero;
+    private final boolean conIncremento;
+    private final Map<String, Fila> estado;
+    private final Destino destino;
+    private final Informe informe;
+    private final Set<String> vistos = new HashSet<>();
+    private BufferedReader lector;
+    private Iterator<Map.Entry<String, Fila>> pendientesBaja;  // Tras leer el fichero: títulos del estado anterior
+    private char separador = 0;
+    private boolean cabeceraPosible = true;
+    private boolean terminado = false;
+    private long inicio;
+
+    /**
+     * @param conIncremento si las filas deben llevar incremento (catálogo del vendedor)
+     * @param estado        lo importado la vez anterior de este fichero (vacío la primera vez)
+     */
+    public ImportadorCsv(Agent agente, Path fichero, boolean conIncremento, Map<String, Fila> estado, Destino destino) {
+        super(agente);
+        this.fichero = fichero;
+        this.conIncremento = conIncremento;
+        this.estado = estado;
+        this.destino = destino;
+        this.informe = new Informe(fichero);
+    }
+
+    @Override
+    public void onStart() {
+        inicio = System.currentTimeMillis();
+        try {
+            lector = Files.newBufferedReader(fichero, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            informe.error = e.toString();
+            terminado = true;
+        }
+    }
+
+    @Override
+    public void action() {
+        if (terminado)
+            return;
+        List<Fila> altas = new ArrayList<>();
+        List<Fila> cambios = new ArrayList<>();
+        List<String> bajas = new ArrayList<>();
+        try {
+            if (lector != null)
+                leerLote(altas, cambios);
+            else
+                bajasLote(bajas);
+        } catch (IOException e) {
+            informe.error = e.toString();
+            cerrar();
+            terminado = true;
+        }
+        if (!altas.isEmpty() || !cambios.isEmpty() || !bajas.isEmpty())
+            destino.lote(altas, cambios, bajas);
+    }
+
+    private void leerLote(List<Fila> altas, List<Fila> cambios) throws IOException {
+        for (int leidas = 0; leidas < TAMANO_LOTE; leidas++) {
+            String linea = lector.readLine();
+            if (linea == null) {
+                cerrar();
+                pendientesBaja = estado.entrySet().iterator();
+                return;
+            }
+            informe.lineas++;
+            String texto = linea.trim();
+            if (texto.isEmpty() || texto.startsWith("#"))
+                continue;
+            if (separador == 0)
+                separador = texto.indexOf(';') >= 0 ? ';' : ',';
+            Fila fila = leerFila(texto);
+            if (fila == null)
+                continue;
+            Fila anterior = estado.put(fila.titulo, fila);
+            if (anterior == null) {
+                altas.add(fila);
+                informe.altas++;
+            } else if (!anterior.igual(fila)) {
+                cambios.add(fila);
+                informe.cambios++;
+            } else {
+                informe.sinCambios++;
+            }
+        }
+    }
+
+    /**
+     * Interpretar una línea de datos; devuelve null si se rechaza o es la cabecera.
+     */
+    private Fila leerFila(String texto) {
+        List<String> campos = campos(texto, separador);
+        boolean cabecera = cabeceraPosible;
+        cabeceraPosible = false;
+        if (campos == null) {
+            rechazar("comillas sin cerrar");
+            return null;
+        }
+        int necesarios = conIncremento ? 3 : 2;
+        if (campos.size() < necesarios) {
+            rechazar("se esperaban " + necesarios + " campos");
+            return null;
+        }
+        String titulo = campos.get(0).trim();
+        float precio;
+        float incremento = 0;
+        try {
+            precio = Float.parseFloat(campos.get(1).trim());
+            if (conIncremento)
+                incremento = Float.parseFloat(campos.get(2).trim());
+        } catch (NumberFormatException e) {
+            if (!cabecera)
+                rechazar("número no válido");
+            return null;
+        }
+        if (titulo.isEmpty()) {
+            rechazar("título vacío");
+        } else if (!(precio >= 0) || Float.isInfinite(precio)) {
+            rechazar("precio no válido");
+        } else if (conIncremento && (!(incremento > 0) || Float.isInfinite(incremento))) {
+            rechazar("el incremento debe ser positivo");
+        } else if (!vistos.add(titulo)) {
+            rechazar("título repetido");
+        } else {
+            return new Fila(titulo, precio, incremento);
+        }
+        return null;
+    }
+
+    private void bajasLote(List<String> bajas) {
+        while (bajas.size() < TAMANO_LOTE && pendientesBaja.hasNext()) {
+            String titulo = pendientesBaja.next().getKey();
+            if (!vistos.contains(titulo)) {
+                pendientesBaja.remove();
+                bajas.add(titulo);
+                informe.bajas++;
+            }
+        }
+        if (!pendientesBaja.hasNext())
+            terminado = true;
+    }
+
+    private void rechazar(String motivo) {
+        informe.rechazadas++;
+        if (informe.rechazos.size() < MAX_RECHAZOS)
+            informe.rechazos.add("línea " + informe.lineas + ": " + motivo);
+    }
+
+    /**
+     * Separar los campos de una línea CSV. Devuelve null si hay comillas sin cerrar.
+     */
+    static List<String> campos(String linea, char separador) {
+        List<String> campos = new ArrayList<>(3);
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (entreComillas) {
+                if (c != '"')
+                    campo.append(c);
+                else if (i + 1 < linea.length() && linea.charAt(i + 1) == '"')
+                    campo.append(linea.charAt(++i));  // Comilla escapada ("")
+                else
+                    entreComillas = false;
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == separador) {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        if (entreComillas)
+            return null;
+        campos.add(campo.toString());
+        return campos;
+    }
+
+    private void cerrar() {
+        if (lector == null)
+            return;
+        try {
+            lector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        lector = null;
+    }
+
+    @Override
+    public boolean done() {
+        return terminado;
+    }
+
+    @Override
+    public int onEnd() {
+        cerrar();
+        informe.milisegundos = System.currentTimeMillis() - inicio;
+        destino.terminada(informe);
+        return 0;
+    }
+}
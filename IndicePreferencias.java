@@ -0,0 +1,229 @@
+package codigo;
+
+import java.text.Normalizer;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Libros que busca un comprador: título -> precio máximo, en una tabla de direccionamiento
+ * abierto (sondeo lineal) con los precios como float primitivos. Consultar si se participa
+ * en una subasta cuesta O(1) y no reserva memoria.
+ *
+ * Con la normalización activada los títulos se comparan sin distinguir mayúsculas, espacios
+ * repetidos ni formas Unicode equivalentes; se conserva el título original para publicarlo.
+ * Todos los métodos son sincronizados: la interfaz puede añadir libros mientras el agente
+ * responde a los mensajes.
+ */
+public class IndicePreferencias {
+    private static final Pattern ESPACIOS = Pattern.compile("\\s+");
+    private static final int CAPACIDAD_INICIAL = 16;
+
+    /**
+     * Recorrido de las preferencias sin crear objetos intermedios.
+     */
+    public interface Visitante {
+        void visitar(String titulo, float precioMaximo);
+    }
+
+    private final boolean normalizar;
+    private String[] claves;   // Título normalizado (o el original sin normalización); null = libre
+    private String[] titulos;  // Título tal como se añadió
+    private float[] precios;
+    private int numero = 0;
+
+    public IndicePreferencias(boolean normalizar) {
+        this.normalizar = normalizar;
+        reservar(CAPACIDAD_INICIAL);
+    }
+
+    public synchronized int size() {
+        return numero;
+    }
+
+    public synchronized boolean contiene(String titulo) {
+        return posicion(clave(titulo)) >= 0;
+    }
+
+    /**
+     * Precio máximo para el título, o NaN si no se busca.
+     */
+    public synchronized float precioMaximo(String titulo) {
+        int i = posicion(clave(titulo));
+        return i >= 0 ? precios[i] : Float.NaN;
+    }
+
+    /**
+     * Si el comprador está dispuesto a pagar el precio indicado por el título.
+     */
+    public synchronized boolean participa(String titulo, double precio) {
+        int i = posicion(clave(titulo));
+        return i >= 0 && precios[i] >= precio;
+    }
+
+    /**
+     * Añadir un título. Si ya estaba se queda el precio máximo más alto.
+     * Devuelve true si el título es nuevo.
+     */
+    public synchronized boolean agregar(String titulo, float precioMaximo) {
+        return insertar(titulo, precioMaximo, false);
+    }
+
+    /**
+     * Añadir un título o sustituir su precio máximo. Devuelve true si el título es nuevo.
+     */
+    public synchronized boolean poner(String titulo, float precioMaximo) {
+        return insertar(titulo, precioMaximo, true);
+    }
+
+    /**
+     * Añadir varios títulos de una vez, reservando la tabla una sola vez.
+     */
+    public synchronized int agregarTodos(Map<String, ? extends Number> libros) {
+        asegurarCapacidad(numero + libros.size());
+        int nuevos = 0;
+        for (Map.Entry<String, ? extends Number> libro : libros.entrySet()) {
+            if (insertar(libro.getKey(), libro.getValue().floatValue(), false))
+                nuevos++;
+        }
+        return nuevos;
+    }
+
+    public synchronized boolean quitar(String titulo) {
+        int i = posicion(clave(titulo));
+        if (i < 0)
+            return false;
+        borrar(i);
+        return true;
+    }
+
+    public synchronized int quitarTodos(Collection<String> titulos) {
+        int quitados = 0;
+        for (String titulo : titulos) {
+            int i = posicion(clave(titulo));
+            if (i >= 0) {
+                borrar(i);
+                quitados++;
+            }
+        }
+        return quitados;
+    }
+
+    /**
+     * Quitar el título solo si su precio máximo cubre el precio indicado, en una sola
+     * operación: dos confirmaciones de compra del mismo libro no pueden aceptarse ambas.
+     */
+    public synchronized boolean quitarSiCubre(String titulo, double precio) {
+        int i = posicion(clave(titulo));
+        if (i < 0 || precios[i] < precio)
+            return false;
+        borrar(i);
+        return true;
+    }
+
+    public synchronized void recorrer(Visitante visitante) {
+        for (int i = 0; i < claves.length; i++) {
+            if (claves[i] != null)
+                visitante.visitar(titulos[i], precios[i]);
+        }
+    }
+
+    private String clave(String titulo) {
+        if (!normalizar || titulo == null)
+            return titulo;
+        String texto = Normalizer.normalize(titulo, Normalizer.Form.NFKC).trim();
+        return ESPACIOS.matcher(texto).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private static int dispersion(String clave) {
+        int h = clave.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int posicion(String clave) {
+        if (clave == null)
+            return -1;
+        int mascara = claves.length - 1;
+        for (int i = dispersion(clave) & mascara; claves[i] != null; i = (i + 1) & mascara) {
+            if (claves[i].equals(clave))
+                return i;
+        }
+        return -1;
+    }
+
+    private boolean insertar(String titulo, float precioMaximo, boolean sustituir) {
+        String clave = clave(titulo);
+        int mascara = claves.length - 1;
+        int i = dispersion(clave) & mascara;
+        for (; claves[i] != null; i = (i + 1) & mascara) {
+            if (claves[i].equals(clave)) {
+                if (sustituir || precioMaximo > precios[i])
+                    precios[i] = precioMaximo;
+                return false;
+            }
+        }
+        claves[i] = clave;
+        titulos[i] = titulo;
+        precios[i] = precioMaximo;
+        numero++;
+        // Factor de carga máximo de 1/2 para mantener cortas las secuencias de sondeo
+        if (numero * 2 > claves.length)
+            asegurarCapacidad(numero);
+        return true;
+    }
+
+    /**
+     * Borrado sin marcas: se recolocan las entradas siguientes de la secuencia de sondeo.
+     */
+    private void borrar(int i) {
+        int mascara = claves.length - 1;
+        int hueco = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mascara;
+            if (claves[j] == null)
+                break;
+            int ideal = dispersion(claves[j]) & mascara;
+            // La entrada j puede ocupar el hueco si su posición ideal no está entre el hueco y j
+            if (((j - ideal) & mascara) >= ((j - hueco) & mascara)) {
+                claves[hueco] = claves[j];
+                titulos[hueco] = titulos[j];
+                precios[hueco] = precios[j];
+                hueco = j;
+            }
+        }
+        claves[hueco] = null;
+        titulos[hueco] = null;
+        numero--;
+    }
+
+    private void asegurarCapacidad(int elementos) {
+        int capacidad = claves.length;
+        while (elementos * 2 > capacidad)
+            capacidad <<= 1;
+        if (capacidad == claves.length)
+            return;
+        String[] clavesAnteriores = claves;
+        String[] titulosAnteriores = titulos;
+        float[] preciosAnteriores = precios;
+        reservar(capacidad);
+        int mascara = capacidad - 1;
+        for (int k = 0; k < clavesAnteriores.length; k++) {
+            if (clavesAnteriores[k] == null)
+                continue;
+            int i = dispersion(clavesAnteriores[k]) & mascara;
+            while (claves[i] != null)
+                i = (i + 1) & mascara;
+            claves[i] = clavesAnteriores[k];
+            titulos[i] = titulosAnteriores[k];
+            precios[i] = preciosAnteriores[k];
+        }
+    }
+
+    private void reservar(int capacidad) {
+        claves = new String[capacidad];
+        titulos = new String[capacidad];
+        precios = new float[capacidad];
+    }
+}
@@ -0,0 +1,313 @@
+package codigo;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Métricas de un agente: contadores, medidores e histogramas de cubetas fijas. Actualizar
+ * un contador o un histograma no reserva memoria, así que pueden estar siempre activos.
+ *
+ * Cada registro se publica como MBean ("codigo:type=Metricas,agente=...") y, si se arranca
+ * el servidor, todos los registros de la JVM se sirven en formato de texto de Prometheus
+ * en http://localhost:puerto/metrics.
+ */
+public class Metricas implements DynamicMBean {
+
+    /**
+     * Contador monótono.
+     */
+    public static class Contador {
+        private final AtomicLong valor = new AtomicLong();
+
+        public void incrementar() {
+            valor.incrementAndGet();
+        }
+
+        public void sumar(long cantidad) {
+            valor.addAndGet(cantidad);
+        }
+
+        public long getValor() {
+            return valor.get();
+        }
+    }
+
+    /**
+     * Histograma con límites superiores fijos; los valores por encima del último van a "+Inf".
+     */
+    public static class Histograma {
+        private final long[] limites;
+        private final AtomicLongArray cubetas;
+        private final AtomicLong cuenta = new AtomicLong();
+        private final AtomicLong suma = new AtomicLong();
+
+        public Histograma(long... limites) {
+            this.limites = limites;
+            this.cubetas = new AtomicLongArray(limites.length + 1);
+        }
+
+        public void registrar(long valor) {
+            int i = 0;
+            while (i < limites.length && valor > limites[i])
+                i++;
+            cubetas.incrementAndGet(i);
+            cuenta.incrementAndGet();
+            suma.addAndGet(valor);
+        }
+
+        public long getCuenta() {
+            return cuenta.get();
+        }
+
+        public long getSuma() {
+            return suma.get();
+        }
+
+        /**
+         * Límite superior de la cubeta que contiene el percentil indicado (0..1).
+         * Si cae en la última cubeta se devuelve Long.MAX_VALUE.
+         */
+        public long percentil(double p) {
+            long total = cuenta.get();
+            if (total == 0)
+                return 0;
+            long objetivo = (long) Math.ceil(p * total);
+            long acumulado = 0;
+            for (int i = 0; i < limites.length; i++) {
+                acumulado += cubetas.get(i);
+                if (acumulado >= objetivo)
+                    return limites[i];
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Métrica registrada: el valor es un Contador, un Histograma o un LongSupplier (medidor).
+     */
+    private static class Metrica {
+        final String nombre;
+        final String ayuda;
+        final Object valor;
+
+        Metrica(String nombre, String ayuda, Object valor) {
+            this.nombre = nombre;
+            this.ayuda = ayuda;
+            this.valor = valor;
+        }
+
+        String tipo() {
+            if (valor instanceof Contador)
+                return "counter";
+            return valor instanceof Histograma ? "histogram" : "gauge";
+        }
+    }
+
+    // Registros publicados en esta JVM, en orden de alta
+    private static final List<Metricas> publicados = new CopyOnWriteArrayList<>();
+    private static HttpServer servidor;
+
+    private final String agente;
+    private final List<Metrica> metricas = new CopyOnWriteArrayList<>();
+    private ObjectName nombreMBean;
+
+    public Metricas(String agente) {
+        this.agente = agente;
+    }
+
+    public Contador contador(String nombre, String ayuda) {
+        Contador contador = new Contador();
+        metricas.add(new Metrica(nombre, ayuda, contador));
+        return contador;
+    }
+
+    public Histograma histograma(String nombre, String ayuda, long... limites) {
+        Histograma histograma = new Histograma(limites);
+        metricas.add(new Metrica(nombre, ayuda, histograma));
+        return histograma;
+    }
+
+    /**
+     * Medidor calculado al leerlo. La función se llama desde el hilo que consulta las métricas.
+     */
+    public void medidor(String nombre, String ayuda, LongSupplier valor) {
+        metricas.add(new Metrica(nombre, ayuda, valor));
+    }
+
+    /**
+     * Publicar el registro como MBean y en el servidor HTTP, si está arrancado.
+     */
+    public void publicar() {
+        try {
+            nombreMBean = new ObjectName("codigo:type=Metricas,agente=" + ObjectName.quote(agente));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, nombreMBean);
+        } catch (JMException e) {
+            System.out.println(agente + ": no se pudo registrar el MBean de métricas: " + e.getMessage());
+            nombreMBean = null;
+        }
+        publicados.add(this);
+    }
+
+    /**
+     * Retirar el registro. Al retirar el último se detiene el servidor HTTP.
+     */
+    public void retirar() {
+        if (nombreMBean != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(nombreMBean);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            nombreMBean = null;
+        }
+        publicados.remove(this);
+        synchronized (Metricas.class) {
+            if (publicados.isEmpty() && servidor != null) {
+                servidor.stop(0);
+                servidor = null;
+            }
+        }
+    }
+
+    /**
+     * Arrancar (una sola vez por JVM) el servidor HTTP local con las métricas de todos los agentes.
+     */
+    public static synchronized void iniciarServidor(int puerto) throws IOException {
+        if (servidor != null)
+            return;
+        servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), puerto), 0);
+        servidor.createContext("/metrics", intercambio -> {
+            byte[] cuerpo = textoPrometheus().getBytes(StandardCharsets.UTF_8);
+            intercambio.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            intercambio.sendResponseHeaders(200, cuerpo.length);
+            try (OutputStream salida = intercambio.getResponseBody()) {
+                salida.write(cuerpo);
+            }
+        });
+        servidor.start();
+    }
+
+    /**
+     * Métricas de todos los registros publicados en formato de texto de Prometheus,
+     * agrupadas por nombre y con el agente como etiqueta.
+     */
+    public static String textoPrometheus() {
+        Map<String, List<Metrica>> porNombre = new TreeMap<>();
+        Map<Metrica, String> agentes = new IdentityHashMap<>();
+        for (Metricas registro : publicados) {
+            for (Metrica metrica : registro.metricas) {
+                porNombre.computeIfAbsent(metrica.nombre, n -> new ArrayList<>()).add(metrica);
+                agentes.put(metrica, registro.agente);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<Metrica>> entrada : porNombre.entrySet()) {
+            String nombre = entrada.getKey();
+            Metrica primera = entrada.getValue().get(0);
+            sb.append("# HELP ").append(nombre).append(' ').append(primera.ayuda).append('\n');
+            sb.append("# TYPE ").append(nombre).append(' ').append(primera.tipo()).append('\n');
+            for (Metrica metrica : entrada.getValue()) {
+                String etiqueta = "agente=\"" + agentes.get(metrica).replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+                if (metrica.valor instanceof Histograma histograma) {
+                    long acumulado = 0;
+                    for (int i = 0; i < histograma.limites.length; i++) {
+                        acumulado += histograma.cubetas.get(i);
+                        sb.append(nombre).append("_bucket{").append(etiqueta).append(",le=\"")
+                                .append(histograma.limites[i]).append("\"} ").append(acumulado).append('\n');
+                    }
+                    acumulado += histograma.cubetas.get(histograma.limites.length);
+                    sb.append(nombre).append("_bucket{").append(etiqueta).append(",le=\"+Inf\"} ").append(acumulado).append('\n');
+                    sb.append(nombre).append("_sum{").append(etiqueta).append("} ").append(histograma.getSuma()).append('\n');
+                    sb.append(nombre).append("_count{").append(etiqueta).append("} ").append(acumulado).append('\n');
+                } else {
+                    sb.append(nombre).append('{').append(etiqueta).append("} ").append(valorSimple(metrica)).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long valorSimple(Metrica metrica) {
+        if (metrica.valor instanceof Contador contador)
+            return contador.getValor();
+        return ((LongSupplier) metrica.valor).getAsLong();
+    }
+
+    // ---- DynamicMBean: atributos de solo lectura; los histogramas aparecen como cuenta, suma y percentiles
+
+    @Override
+    public Object getAttribute(String atributo) throws AttributeNotFoundException {
+        for (Metrica metrica : metricas) {
+            if (!(metrica.valor instanceof Histograma histograma)) {
+                if (metrica.nombre.equals(atributo))
+                    return valorSimple(metrica);
+            } else if (atributo.startsWith(metrica.nombre + "_")) {
+                switch (atributo.substring(metrica.nombre.length() + 1)) {
+                    case "count": return histograma.getCuenta();
+                    case "sum": return histograma.getSuma();
+                    case "p50": return histograma.percentil(0.5);
+                    case "p90": return histograma.percentil(0.9);
+                    case "p99": return histograma.percentil(0.99);
+                    default: break;
+                }
+            }
+        }
+        throw new AttributeNotFoundException(atributo);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] atributos) {
+        AttributeList lista = new AttributeList();
+        for (String atributo : atributos) {
+            try {
+                lista.add(new Attribute(atributo, getAttribute(atributo)));
+            } catch (AttributeNotFoundException e) {
+                // Los atributos desconocidos se omiten
+            }
+        }
+        return lista;
+    }
+
+    @Override
+    public void setAttribute(Attribute atributo) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Atributo de solo lectura: " + atributo.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList atributos) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String accion, Object[] parametros, String[] firma) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(accion));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> atributos = new ArrayList<>();
+        for (Metrica metrica : metricas) {
+            if (metrica.valor instanceof Histograma) {
+                for (String sufijo : new String[]{"count", "sum", "p50", "p90", "p99"})
+                    atributos.add(new MBeanAttributeInfo(metrica.nombre + "_" + sufijo, "long",
+                            metrica.ayuda + " (" + sufijo + ")", true, false, false));
+            } else {
+                atributos.add(new MBeanAttributeInfo(metrica.nombre, "long", metrica.ayuda, true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "Métricas del agente " + agente,
+                atributos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
@@ -0,0 +1,113 @@
+package codigo;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Historial de rondas de una subasta con capacidad fija. La primera fila es un resumen
+ * de la subasta y el resto son las últimas rondas recibidas, guardadas en un buffer
+ * circular: al llenarse, cada ronda nueva sustituye a la más antigua.
+ */
+public class ModeloHistorialRondas extends AbstractTableModel {
+    private static final String[] COLUMNAS = {"Libro", "Vendedor", "Precio Actual", "Pujadores", "Ronda"};
+    // Los pujadores de la actualización final son "Ganador: <nombre>" en lugar de la lista
+    static final String PREFIJO_GANADOR = "Ganador: ";
+
+    /**
+     * Situación del comprador en la subasta, calculada una vez por actualización.
+     */
+    public enum Resaltado {NINGUNO, PARTICIPANDO, SUPERADO, GANADOR, PERDEDOR}
+
+    private final Object[][] rondas;
+    private int inicio = 0;  // Posición de la ronda más antigua
+    private int numero = 0;  // Rondas guardadas
+    private long totalRondas = 0;  // Rondas recibidas desde el inicio
+    private final Object[] resumen;
+    private Resaltado resaltado = Resaltado.NINGUNO;
+
+    public ModeloHistorialRondas(String titulo, int capacidad) {
+        this.rondas = new Object[capacidad][];
+        this.resumen = new Object[]{titulo, "", 0.0, "Resumen: sin rondas", 0};
+    }
+
+    @Override
+    public int getRowCount() {
+        return numero + 1;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNAS.length;
+    }
+
+    @Override
+    public String getColumnName(int columna) {
+        return COLUMNAS[columna];
+    }
+
+    @Override
+    public Object getValueAt(int fila, int columna) {
+        if (fila == 0)
+            return resumen[columna];
+        return rondas[(inicio + fila - 1) % rondas.length][columna];
+    }
+
+    public Resaltado getResaltado() {
+        return resaltado;
+    }
+
+    /**
+     * Añadir una ronda y recalcular el resumen y el resaltado para el comprador indicado.
+     */
+    public void agregarRonda(String titulo, String vendedor, double precio, String pujadores, int ronda, String comprador) {
+        Object[] fila = {titulo, vendedor, precio, pujadores, ronda};
+        totalRondas++;
+        if (numero < rondas.length) {
+            rondas[(inicio + numero) % rondas.length] = fila;
+            numero++;
+            fireTableRowsInserted(numero, numero);
+        } else {
+            // Buffer lleno: se sobrescribe la ronda más antigua y todas las filas se desplazan
+            rondas[inicio] = fila;
+            inicio = (inicio + 1) % rondas.length;
+            fireTableRowsUpdated(1, numero);
+        }
+
+        if (pujadores.startsWith(PREFIJO_GANADOR))
+            resaltado = pujadores.substring(PREFIJO_GANADOR.length()).trim().equals(comprador) ? Resaltado.GANADOR : Resaltado.PERDEDOR;
+        else if (contienePujador(pujadores, comprador))
+            resaltado = Resaltado.PARTICIPANDO;
+        else if (resaltado == Resaltado.PARTICIPANDO)
+            resaltado = Resaltado.SUPERADO;
+
+        resumen[1] = vendedor;
+        resumen[2] = precio;
+        resumen[3] = "Resumen: " + totalRondas + " actualizaciones, " + textoResaltado();
+        resumen[4] = ronda;
+        fireTableRowsUpdated(0, 0);
+    }
+
+    /**
+     * Si el comprador está en la lista de pujadores de una ronda ("[a, b]"), comparando
+     * nombres completos: "comprador1" no está en "[comprador10]".
+     */
+    private static boolean contienePujador(String pujadores, String comprador) {
+        String lista = pujadores.trim();
+        if (lista.startsWith("[") && lista.endsWith("]"))
+            lista = lista.substring(1, lista.length() - 1);
+        for (String pujador : lista.split(",")) {
+            if (pujador.trim().equals(comprador))
+                return true;
+        }
+        return false;
+    }
+
+    private String textoResaltado() {
+        return switch (resaltado) {
+            case NINGUNO -> "sin participar";
+            case PARTICIPANDO -> "pujando";
+            case SUPERADO -> "superado";
+            case GANADOR -> "ganada";
+            case PERDEDOR -> "perdida";
+        };
+    }
+}
@@ -0,0 +1,105 @@
+package codigo;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Modelo de la tabla de subastas activas con un índice título -> fila, de modo que
+ * actualizar o quitar una subasta no recorre la tabla. Al quitar una fila se mueve la
+ * última a su hueco (el orden de las filas no es significativo).
+ *
+ * Solo debe usarse desde el hilo de Swing. Las actualizaciones de valores no avisan a
+ * la tabla hasta llamar a publicarCambios, para repintar una vez por lote.
+ */
+public class ModeloSubastasActivas extends AbstractTableModel {
+    private static final String[] COLUMNAS = {"Subasta", "Precio (ronda)", "Incremento", "Pujadores", "Ronda"};
+
+    private final List<Object[]> filas = new ArrayList<>();
+    private final Map<String, Integer> indice = new HashMap<>();
+    // Rango de filas modificadas desde la última publicación
+    private int primeraModificada = Integer.MAX_VALUE;
+    private int ultimaModificada = -1;
+
+    @Override
+    public int getRowCount() {
+        return filas.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNAS.length;
+    }
+
+    @Override
+    public String getColumnName(int columna) {
+        return COLUMNAS[columna];
+    }
+
+    @Override
+    public Object getValueAt(int fila, int columna) {
+        return filas.get(fila)[columna];
+    }
+
+    /**
+     * Añadir una subasta, o actualizarla si ya hay una fila con ese título.
+     */
+    public void agregar(String titulo, float precioActual, float incremento, String pujadores, int ronda) {
+        if (indice.containsKey(titulo)) {
+            actualizar(titulo, precioActual, incremento, pujadores, ronda);
+            return;
+        }
+        int fila = filas.size();
+        filas.add(new Object[]{titulo, precioActual, incremento, pujadores, ronda});
+        indice.put(titulo, fila);
+        fireTableRowsInserted(fila, fila);
+    }
+
+    public void actualizar(String titulo, float precioActual, float incremento, String pujadores, int ronda) {
+        Integer fila = indice.get(titulo);
+        if (fila == null)
+            return;
+        Object[] valores = filas.get(fila);
+        valores[1] = precioActual;
+        valores[2] = incremento;
+        valores[3] = pujadores;
+        valores[4] = ronda;
+        primeraModificada = Math.min(primeraModificada, fila);
+        ultimaModificada = Math.max(ultimaModificada, fila);
+    }
+
+    /**
+     * Quitar la fila de una subasta. Devuelve false si no estaba en la tabla.
+     */
+    public boolean quitar(String titulo) {
+        Integer fila = indice.remove(titulo);
+        if (fila == null)
+            return false;
+        // Publicar antes los cambios pendientes: los índices de fila van a cambiar
+        publicarCambios();
+        int ultima = filas.size() - 1;
+        Object[] movida = filas.remove(ultima);
+        if (fila != ultima) {
+            filas.set(fila, movida);
+            indice.put((String) movida[0], fila);
+            fireTableRowsUpdated(fila, fila);
+        }
+        fireTableRowsDeleted(ultima, ultima);
+        return true;
+    }
+
+    /**
+     * Avisar a la tabla de las filas actualizadas desde la última llamada, con un único evento.
+     */
+    public void publicarCambios() {
+        if (ultimaModificada < 0)
+            return;
+        int primera = primeraModificada;
+        int ultima = ultimaModificada;
+        primeraModificada = Integer.MAX_VALUE;
+        ultimaModificada = -1;
+        fireTableRowsUpdated(primera, ultima);
+    }
+}
@@ -0,0 +1,34 @@
+package codigo;
+
+import java.util.List;
+
+/**
+ * Receptor de los eventos que el comprador muestra al usuario: la interfaz gráfica o
+ * ninguno en modo headless. Por defecto los eventos se ignoran. Se llaman desde el hilo
+ * del agente, así que una interfaz Swing debe pasar cada cambio al EDT con invokeLater.
+ */
+public interface ObservadorComprador {
+    default void agregarNotificacion(String mensaje) {
+    }
+
+    default void libroAnhadido(String titulo, double precioMaximo) {
+    }
+
+    default void updateAuctionStatus(String bookTitle, String sellerName, double currentPrice, String bidders, int roundNumber) {
+    }
+
+    default void markBookAsPurchased(String bookTitle, double finalPrice) {
+    }
+
+    /**
+     * Lote de una importación de preferencias: títulos añadidos o con nuevo precio, y títulos quitados.
+     */
+    default void preferenciasImportadas(List<ImportadorCsv.Fila> puestas, List<String> quitadas) {
+    }
+
+    /**
+     * Mensaje enviado por el agente y número de receptores, para medir el tráfico.
+     */
+    default void mensajeEnviado(int performativa, int receptores) {
+    }
+}
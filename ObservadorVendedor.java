@@ -0,0 +1,32 @@
+package codigo;
+
+/**
+ * Receptor de los eventos que el vendedor muestra al usuario: la interfaz gráfica,
+ * el reenvío de los eventos al vendedor coordinador en un fragmento, o ninguno en modo
+ * headless. Por defecto los eventos se ignoran.
+ */
+public interface ObservadorVendedor {
+    default void agregarNotificacion(String mensaje) {
+    }
+
+    default void agregarSubastaATabla(String titulo, float precioActual, float incremento, String pujadores, int ronda) {
+    }
+
+    default void actualizarSubastaEnTabla(String titulo, float precioActual, float incremento, String pujadores, int ronda) {
+    }
+
+    default void notificarLibroVendido(String titulo, String comprador, float precioFinal, String telefono) {
+    }
+
+    /**
+     * Subasta retirada sin venta (por ejemplo, al reimportar un catálogo sin ese título).
+     */
+    default void subastaRetirada(String titulo) {
+    }
+
+    /**
+     * Mensaje enviado por el agente y número de receptores, para medir el tráfico.
+     */
+    default void mensajeEnviado(int performativa, int receptores) {
+    }
+}
@@ -0,0 +1,436 @@
+package codigo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Registro de escritura anticipada (write-ahead log) del estado de las subastas.
+ * Cada transición se añade a un fichero proyectado en memoria, de forma que el coste
+ * por evento es el de copiar unos pocos bytes. Periódicamente se guarda una instantánea
+ * con las subastas vivas y se empieza un registro nuevo (compactación).
+ *
+ * Ficheros en el directorio:
+ *   subastas.snap       instantánea con la generación del registro que le sigue
+ *   subastas-N.wal      registro de la generación N
+ *
+ * Cada entrada del registro es [int longitud][byte tipo][datos]. La longitud se escribe
+ * al final, así que una entrada a medias se lee como longitud 0 y marca el final. Al
+ * recuperar se pone a cero todo lo que sigue a la última entrada completa, para que los
+ * restos de una entrada a medias no se lean como entradas tras la próxima caída.
+ */
+public class RegistroSubastas implements Closeable {
+    private static final byte INICIO = 1;
+    private static final byte RONDA = 2;
+    private static final byte PUJA = 3;
+    private static final byte GANADOR = 4;
+    private static final byte TERMINADA = 5;
+    private static final byte MODALIDAD = 6;
+
+    private static final String INSTANTANEA = "subastas.snap";
+
+    private final Path directorio;
+    private final int tamanoInicial;
+    private long generacion = 0;
+    private FileChannel canal;
+    private MappedByteBuffer buffer;
+    private int eventosDesdeInstantanea = 0;
+
+    /**
+     * Estado persistido de una subasta.
+     */
+    public static class Estado {
+        public String conversationId;
+        public String titulo;
+        public float precioInicial;
+        public float incremento;
+        public long periodo;
+        public int ronda;
+        public long secuencia;
+        public float precioActual;
+        public String postorAnterior;
+        public String ultimoPostor;
+        public final Set<String> pujadores = new LinkedHashSet<>();
+        public String comprador;  // Ganador pendiente de confirmar la compra
+        public String modalidad;  // null en las subastas inglesas
+    }
+
+    public RegistroSubastas(Path directorio, int tamanoInicial) throws IOException {
+        this.directorio = directorio;
+        this.tamanoInicial = tamanoInicial;
+        Files.createDirectories(directorio);
+    }
+
+    /**
+     * Reconstruir las subastas vivas a partir de la instantánea y del registro que la sigue,
+     * y dejar el registro abierto para seguir añadiendo eventos.
+     */
+    public Collection<Estado> recuperar() throws IOException {
+        Map<String, Estado> estados = new LinkedHashMap<>();
+        Path instantanea = directorio.resolve(INSTANTANEA);
+        if (Files.exists(instantanea)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(instantanea)))) {
+                generacion = in.readLong();
+                int n = in.readInt();
+                for (int i = 0; i < n; i++) {
+                    Estado estado = leerEstado(in);
+                    estados.put(estado.conversationId, estado);
+                }
+                leerModalidades(in, estados);
+            }
+        }
+        abrir(generacion);
+        reproducir(estados);
+        return estados.values();
+    }
+
+    public void inicio(String conversationId, String titulo, float precioInicial, float incremento, long periodo) {
+        int p = empezar(INICIO, 64 + longitud(conversationId) + longitud(titulo));
+        putTexto(conversationId);
+        putTexto(titulo);
+        buffer.putFloat(precioInicial);
+        buffer.putFloat(incremento);
+        buffer.putLong(periodo);
+        terminar(p);
+    }
+
+    public void ronda(String conversationId, int ronda, long secuencia, float precio, String postorAnterior) {
+        int p = empezar(RONDA, 64 + longitud(conversationId) + longitud(postorAnterior));
+        putTexto(conversationId);
+        buffer.putInt(ronda);
+        buffer.putLong(secuencia);
+        buffer.putFloat(precio);
+        putTexto(postorAnterior);
+        terminar(p);
+    }
+
+    /**
+     * Modalidad de una subasta que no es inglesa; se escribe justo después de su inicio.
+     */
+    public void modalidad(String conversationId, String modalidad) {
+        int p = empezar(MODALIDAD, 8 + longitud(conversationId) + longitud(modalidad));
+        putTexto(conversationId);
+        putTexto(modalidad);
+        terminar(p);
+    }
+
+    public void puja(String conversationId, String pujador) {
+        int p = empezar(PUJA, 16 + longitud(conversationId) + longitud(pujador));
+        putTexto(conversationId);
+        putTexto(pujador);
+        terminar(p);
+    }
+
+    public void ganador(String conversationId, String comprador, float precio) {
+        int p = empezar(GANADOR, 16 + longitud(conversationId) + longitud(comprador));
+        putTexto(conversationId);
+        putTexto(comprador);
+        buffer.putFloat(precio);
+        terminar(p);
+    }
+
+    /**
+     * La subasta ha terminado (venta confirmada o reiniciada como subasta nueva).
+     */
+    public void terminada(String conversationId) {
+        int p = empezar(TERMINADA, 8 + longitud(conversationId));
+        putTexto(conversationId);
+        terminar(p);
+    }
+
+    public int getEventosDesdeInstantanea() {
+        return eventosDesdeInstantanea;
+    }
+
+    /**
+     * Guardar una instantánea con las subastas vivas y compactar: el registro actual se
+     * sustituye por uno vacío de la generación siguiente.
+     */
+    public void instantanea(Collection<Estado> vivas) throws IOException {
+        long siguiente = generacion + 1;
+        Path temporal = directorio.resolve(INSTANTANEA + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal)))) {
+            out.writeLong(siguiente);
+            out.writeInt(vivas.size());
+            for (Estado estado : vivas)
+                escribirEstado(out, estado);
+            escribirModalidades(out, vivas);
+        }
+        try (FileChannel fc = FileChannel.open(temporal, StandardOpenOption.WRITE)) {
+            fc.force(true);
+        }
+        Files.move(temporal, directorio.resolve(INSTANTANEA), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long anterior = generacion;
+        cerrarCanal();
+        abrir(siguiente);
+        Files.deleteIfExists(fichero(anterior));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer != null)
+            buffer.force();
+        cerrarCanal();
+    }
+
+    private Path fichero(long gen) {
+        return directorio.resolve("subastas-" + gen + ".wal");
+    }
+
+    private void abrir(long gen) throws IOException {
+        generacion = gen;
+        canal = FileChannel.open(fichero(gen), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long tamano = Math.max(canal.size(), tamanoInicial);
+        buffer = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+        eventosDesdeInstantanea = 0;
+    }
+
+    private void cerrarCanal() throws IOException {
+        if (canal != null)
+            canal.close();
+        canal = null;
+        buffer = null;
+    }
+
+    /**
+     * Aplicar los eventos del registro abierto sobre los estados y dejar la posición de
+     * escritura tras el último evento completo. Lo que queda detrás se pone a cero.
+     */
+    private void reproducir(Map<String, Estado> estados) {
+        buffer.position(0);
+        while (buffer.remaining() >= 4) {
+            int inicio = buffer.position();
+            int longitud = buffer.getInt();
+            if (longitud <= 0 || longitud > buffer.remaining()) {
+                buffer.position(inicio);
+                break;
+            }
+            try {
+                aplicar(estados, buffer.slice(inicio + 4, longitud));
+            } catch (RuntimeException e) {
+                // Entrada ilegible: el registro válido termina antes de ella
+                buffer.position(inicio);
+                break;
+            }
+            buffer.position(inicio + 4 + longitud);
+            eventosDesdeInstantanea++;
+        }
+        borrarResto();
+    }
+
+    /**
+     * Aplicar una entrada (tipo y datos). Los campos se leen antes de tocar los estados, así
+     * que una entrada truncada lanza una excepción sin haber aplicado nada.
+     */
+    private static void aplicar(Map<String, Estado> estados, ByteBuffer entrada) {
+        byte tipo = entrada.get();
+        String id = getTexto(entrada);
+        Estado estado = estados.get(id);
+        switch (tipo) {
+            case INICIO -> {
+                String titulo = getTexto(entrada);
+                float precioInicial = entrada.getFloat();
+                float incremento = entrada.getFloat();
+                long periodo = entrada.getLong();
+                estado = new Estado();
+                estado.conversationId = id;
+                estado.titulo = titulo;
+                estado.precioInicial = precioInicial;
+                estado.incremento = incremento;
+                estado.periodo = periodo;
+                estado.precioActual = estado.precioInicial;
+                estados.put(id, estado);
+            }
+            case RONDA -> {
+                int ronda = entrada.getInt();
+                long secuencia = entrada.getLong();
+                float precio = entrada.getFloat();
+                String postorAnterior = getTexto(entrada);
+                if (estado != null) {
+                    estado.ronda = ronda;
+                    estado.secuencia = secuencia;
+                    estado.precioActual = precio;
+                    estado.postorAnterior = postorAnterior;
+                    estado.ultimoPostor = null;
+                    estado.pujadores.clear();
+                }
+            }
+            case PUJA -> {
+                String pujador = getTexto(entrada);
+                if (estado != null) {
+                    if (estado.ultimoPostor == null)
+                        estado.postorAnterior = pujador;
+                    estado.ultimoPostor = pujador;
+                    estado.pujadores.add(pujador);
+                }
+            }
+            case GANADOR -> {
+                String comprador = getTexto(entrada);
+                float precio = entrada.getFloat();
+                if (estado != null) {
+                    estado.comprador = comprador;
+                    estado.precioActual = precio;
+                }
+            }
+            case MODALIDAD -> {
+                String modalidad = getTexto(entrada);
+                if (estado != null)
+                    estado.modalidad = modalidad;
+            }
+            case TERMINADA -> estados.remove(id);
+            default -> {
+                // Entrada desconocida: se salta
+            }
+        }
+    }
+
+    /**
+     * Poner a cero el registro desde la posición actual hasta el final. Las entradas que se
+     * escriban después pueden ser más cortas que lo que había; sin esto, los bytes viejos
+     * que quedan detrás se leerían como una longitud en la siguiente recuperación.
+     */
+    private void borrarResto() {
+        int posicion = buffer.position();
+        byte[] ceros = new byte[4096];
+        while (buffer.hasRemaining())
+            buffer.put(ceros, 0, Math.min(ceros.length, buffer.remaining()));
+        buffer.force();
+        buffer.position(posicion);
+    }
+
+    /**
+     * Reservar espacio para una entrada y escribir su tipo. Devuelve la posición de la longitud.
+     */
+    private int empezar(byte tipo, int maximo) {
+        if (buffer.remaining() < maximo + 5)
+            crecer(maximo + 5);
+        int p = buffer.position();
+        buffer.putInt(0);
+        buffer.put(tipo);
+        return p;
+    }
+
+    private void terminar(int p) {
+        // Escribir la longitud en último lugar confirma la entrada
+        buffer.putInt(p, buffer.position() - p - 4);
+        eventosDesdeInstantanea++;
+    }
+
+    private void crecer(int necesario) {
+        try {
+            int posicion = buffer.position();
+            long tamano = Math.max((long) buffer.capacity() * 2, (long) posicion + necesario);
+            buffer = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+            buffer.position(posicion);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int longitud(String texto) {
+        return texto == null ? 2 : 2 + 3 * texto.length();
+    }
+
+    private void putTexto(String texto) {
+        if (texto == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getTexto(ByteBuffer entrada) {
+        short n = entrada.getShort();
+        if (n < 0)
+            return null;
+        byte[] bytes = new byte[n];
+        entrada.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void escribirEstado(DataOutputStream out, Estado estado) throws IOException {
+        out.writeUTF(estado.conversationId);
+        out.writeUTF(estado.titulo);
+        out.writeFloat(estado.precioInicial);
+        out.writeFloat(estado.incremento);
+        out.writeLong(estado.periodo);
+        out.writeInt(estado.ronda);
+        out.writeLong(estado.secuencia);
+        out.writeFloat(estado.precioActual);
+        escribirOpcional(out, estado.postorAnterior);
+        escribirOpcional(out, estado.ultimoPostor);
+        escribirOpcional(out, estado.comprador);
+        out.writeInt(estado.pujadores.size());
+        for (String pujador : estado.pujadores)
+            out.writeUTF(pujador);
+    }
+
+    private static Estado leerEstado(DataInputStream in) throws IOException {
+        Estado estado = new Estado();
+        estado.conversationId = in.readUTF();
+        estado.titulo = in.readUTF();
+        estado.precioInicial = in.readFloat();
+        estado.incremento = in.readFloat();
+        estado.periodo = in.readLong();
+        estado.ronda = in.readInt();
+        estado.secuencia = in.readLong();
+        estado.precioActual = in.readFloat();
+        estado.postorAnterior = leerOpcional(in);
+        estado.ultimoPostor = leerOpcional(in);
+        estado.comprador = leerOpcional(in);
+        int n = in.readInt();
+        for (int i = 0; i < n; i++)
+            estado.pujadores.add(in.readUTF());
+        return estado;
+    }
+
+    /**
+     * Las modalidades van en una sección al final de la instantánea, tras los estados, para
+     * que las instantáneas anteriores (sin ella) sigan leyéndose.
+     */
+    private static void escribirModalidades(DataOutputStream out, Collection<Estado> vivas) throws IOException {
+        int n = 0;
+        for (Estado estado : vivas) {
+            if (estado.modalidad != null)
+                n++;
+        }
+        out.writeInt(n);
+        for (Estado estado : vivas) {
+            if (estado.modalidad != null) {
+                out.writeUTF(estado.conversationId);
+                out.writeUTF(estado.modalidad);
+            }
+        }
+    }
+
+    private static void leerModalidades(DataInputStream in, Map<String, Estado> estados) throws IOException {
+        int n;
+        try {
+            n = in.readInt();
+        } catch (EOFException e) {
+            return;  // Instantánea sin modalidades: todas las subastas son inglesas
+        }
+        for (int i = 0; i < n; i++) {
+            Estado estado = estados.get(in.readUTF());
+            String modalidad = in.readUTF();
+            if (estado != null)
+                estado.modalidad = modalidad;
+        }
+    }
+
+    private static void escribirOpcional(DataOutputStream out, String texto) throws IOException {
+        out.writeBoolean(texto != null);
+        if (texto != null)
+            out.writeUTF(texto);
+    }
+
+    private static String leerOpcional(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,141 @@
+package codigo;
+
+import java.util.List;
+
+/**
+ * Rueda temporal (hashed timing wheel) para programar vencimientos.
+ * Cada entrada se guarda en la casilla que corresponde a su instante de vencimiento,
+ * de modo que al avanzar solo se recorren las casillas de los ticks transcurridos y
+ * no todas las entradas vivas.
+ */
+public class RuedaTemporal<T> {
+    private final long resolucion;  // Milisegundos que cubre cada casilla
+    private final Entrada<T>[] casillas;  // Cabeza de la lista de cada casilla
+    private final int mascara;
+    private long ultimoTick = -1;  // Último tick ya procesado
+    private int tamanho = 0;
+
+    /**
+     * Entrada programada en la rueda. Se enlaza en una lista doble dentro de su casilla
+     * para poder cancelarla o reprogramarla en tiempo constante.
+     */
+    public static class Entrada<T> {
+        private final T elemento;
+        private long vencimiento;
+        private int casilla = -1;
+        private Entrada<T> anterior;
+        private Entrada<T> siguiente;
+
+        private Entrada(T elemento) {
+            this.elemento = elemento;
+        }
+
+        public T getElemento() {
+            return elemento;
+        }
+
+        public long getVencimiento() {
+            return vencimiento;
+        }
+
+        public boolean isProgramada() {
+            return casilla >= 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public RuedaTemporal(long resolucion, int numeroCasillas) {
+        if (resolucion <= 0 || numeroCasillas <= 0)
+            throw new IllegalArgumentException("Resolución y número de casillas deben ser positivos");
+        // Redondear a potencia de dos para calcular la casilla con una máscara
+        int n = Integer.highestOneBit(numeroCasillas);
+        if (n < numeroCasillas)
+            n <<= 1;
+        this.resolucion = resolucion;
+        this.casillas = (Entrada<T>[]) new Entrada[n];
+        this.mascara = n - 1;
+    }
+
+    /**
+     * Programar un elemento para que venza en el instante indicado (ms).
+     */
+    public Entrada<T> programar(T elemento, long vencimiento) {
+        Entrada<T> entrada = new Entrada<>(elemento);
+        insertar(entrada, vencimiento);
+        return entrada;
+    }
+
+    /**
+     * Mover una entrada ya existente a un nuevo instante de vencimiento.
+     */
+    public void reprogramar(Entrada<T> entrada, long vencimiento) {
+        if (entrada.isProgramada())
+            quitar(entrada);
+        insertar(entrada, vencimiento);
+    }
+
+    public void cancelar(Entrada<T> entrada) {
+        if (entrada.isProgramada())
+            quitar(entrada);
+    }
+
+    public int size() {
+        return tamanho;
+    }
+
+    /**
+     * Avanzar la rueda hasta el instante indicado y añadir a vencidos los elementos
+     * cuyo vencimiento ya ha pasado. Las entradas vencidas quedan fuera de la rueda
+     * hasta que se reprogramen.
+     */
+    public void avanzar(long ahora, List<T> vencidos) {
+        long tickActual = ahora / resolucion;
+        if (ultimoTick < 0)
+            ultimoTick = tickActual - 1;
+        // Tras una pausa larga basta con dar una vuelta completa a la rueda
+        long desde = Math.max(ultimoTick + 1, tickActual - mascara);
+        for (long tick = desde; tick <= tickActual; tick++) {
+            Entrada<T> entrada = casillas[(int) (tick & mascara)];
+            while (entrada != null) {
+                Entrada<T> siguiente = entrada.siguiente;
+                // Las entradas de vueltas posteriores se quedan en la casilla
+                if (entrada.vencimiento <= ahora) {
+                    quitar(entrada);
+                    vencidos.add(entrada.elemento);
+                }
+                entrada = siguiente;
+            }
+        }
+        ultimoTick = tickActual;
+    }
+
+    private void insertar(Entrada<T> entrada, long vencimiento) {
+        // Redondear hacia arriba: al recorrer la casilla el vencimiento ya habrá pasado
+        long tick = (vencimiento + resolucion - 1) / resolucion;
+        // Nunca programar en una casilla ya recorrida: se atendería en la vuelta siguiente
+        if (ultimoTick >= 0 && tick <= ultimoTick)
+            tick = ultimoTick + 1;
+        int indice = (int) (tick & mascara);
+        entrada.vencimiento = vencimiento;
+        entrada.casilla = indice;
+        entrada.anterior = null;
+        entrada.siguiente = casillas[indice];
+        if (casillas[indice] != null)
+            casillas[indice].anterior = entrada;
+        casillas[indice] = entrada;
+        tamanho++;
+    }
+
+    private void quitar(Entrada<T> entrada) {
+        if (entrada.anterior != null)
+            entrada.anterior.siguiente = entrada.siguiente;
+        else
+            casillas[entrada.casilla] = entrada.siguiente;
+        if (entrada.siguiente != null)
+            entrada.siguiente.anterior = entrada.anterior;
+        entrada.anterior = null;
+        entrada.siguiente = null;
+        entrada.casilla = -1;
+        tamanho--;
+    }
+}
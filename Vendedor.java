@@ -1,22 +1,37 @@
 package codigo;
 
+import jade.content.Concept;
+import jade.content.ContentElement;
+import jade.content.ContentElementList;
+import jade.content.ContentManager;
 import jade.content.onto.OntologyException;
 import jade.content.onto.basic.Action;
 import jade.core.Agent;
-import jade.core.behaviours.TickerBehaviour;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
 import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.TickerBehaviour;
 import jade.core.behaviours.WakerBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.domain.FIPAException;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.MessageTemplate;
+import jade.content.lang.leap.LEAPCodec;
 import jade.content.lang.sl.SLCodec;
 import jade.content.onto.Ontology;
+import jade.wrapper.AgentController;
+import jade.wrapper.StaleProxyException;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLOutput;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import ontologia.*;
 import jade.content.lang.Codec;
@@ -25,31 +40,193 @@ import ontologia.impl.*;
 public class Vendedor extends Agent {
     // Mapa para manejar múltiples subastas: título del libro -> información de la subasta
     private Map<String, Subasta> mapaSubastas;
-    private VendedorGUI gui;
+    // Subastas por conversation-id, para correlacionar las respuestas sin depender del título
+    private final Map<String, Subasta> mapaConversaciones = new HashMap<>();
+    private long contadorSubastas = 0;
+    private long propuestasDescartadas = 0;  // PROPOSE tardíos o de conversaciones desconocidas
+    private ObservadorVendedor gui;
     private Codec codec;
+    private Codec codecCompacto;  // Codificación binaria (LEAP) opcional para la misma ontología
+    private boolean usarCodecCompacto = false;
     private  Ontology ontology;
+    // Rueda temporal con las rondas pendientes de todas las subastas
+    private RuedaTemporal<Subasta> ruedaSubastas;
+    private long periodoRonda = 10000;  // Intervalo por defecto entre rondas (ms)
+    private static final long RESOLUCION_RUEDA = 100;  // Granularidad del planificador (ms)
+    private static final int CASILLAS_RUEDA = 512;
+    // Cierre anticipado de ronda: el periodo pasa a ser solo el tiempo máximo de espera
+    private boolean cierreAnticipado = false;
+    private double quorumRespuestas = 1.0;  // Fracción de participantes que deben responder
+    private long graciaQuorum = 500;  // Espera extra tras alcanzar el quórum (ms)
+    private long plazoConfirmacion = 30000;  // Espera de la confirmación de compra de cada candidato (ms)
+    // Incremento adaptativo de la subasta inglesa: factor de crecimiento del paso. Por defecto 1
+    // (incremento fijo); con "incrementoAdaptativo=2" el paso se duplica mientras pujan más de dos
+    private double factorIncremento = 1.0;
+    private double sobrepujaMaxima = 0.1;  // Paso máximo como fracción del precio actual (nunca menor que el incremento)
+    // CFP por lotes (argumento "cfpPorLotes"): un solo CFP por comprador y tick con las ofertas de todas sus subastas
+    private boolean cfpPorLotes = false;
+    private long loteCfp = 0;  // Tick del planificador, numera los lotes
+    // Lote en curso: protocolo (modalidad) -> comprador -> subastas cuyo CFP le corresponde
+    private final Map<String, Map<String, List<Subasta>>> cfpPendientes = new HashMap<>();
+    // Índice título -> compradores interesados, mantenido por la suscripción al DF
+    private final Map<String, Set<String>> interesadosPorTitulo = new HashMap<>();
+    // Títulos anunciados por cada comprador, para poder retirarlos del índice
+    private final Map<String, Set<String>> titulosPorComprador = new HashMap<>();
+    // Compradores que anuncian en el DF que entienden el codec compacto
+    private final Set<String> compradoresCompactos = new HashSet<>();
+    private ACLMessage suscripcionDF;
+    private DespachadorMensajes despachador;
+    private static final int LOTE_DESPACHADOR = 64;  // Mensajes procesados por pasada del despachador
+    // Pool de decodificación (opcional, argumento "hilosDecodificacion=<n>")
+    private DecodificadorParalelo decodificador;
+    // Registro persistente del estado de las subastas (opcional, argumento "persistencia=<directorio>")
+    private RegistroSubastas registro;
+    private static final int TAMANO_REGISTRO = 1 << 20;  // Tamaño inicial del fichero proyectado (bytes)
+    private static final int EVENTOS_POR_INSTANTANEA = 10000;  // Eventos tras los que se compacta el registro
+    // Modo fragmentado: un coordinador reparte los títulos entre varios vendedores (fragmentos)
+    private AnilloConsistente anilloFragmentos;  // Solo en el coordinador
+    private final Map<String, String> fragmentoPorTitulo = new HashMap<>();  // Fragmento dueño de cada subasta
+    private final Map<String, float[]> subastasPendientes = new LinkedHashMap<>();  // Título -> {precio, incremento}
+    private final Map<String, String> modalidadesPendientes = new HashMap<>();  // Título -> modalidad, si no es la inglesa
+    private final Set<String> migrando = new HashSet<>();  // Títulos con una cesión en curso
+    private final List<String> fragmentosPropios = new ArrayList<>();  // Fragmentos creados por el coordinador
+    private final Set<String> fragmentosRetirados = new HashSet<>();  // Fuera del anillo, a la espera de ceder sus subastas
+    private int siguienteFragmento = 0;
+    private boolean contenedorPorFragmento = false;
+    private String coordinador;  // Solo en un fragmento: nombre local del coordinador
+    private static final int NODOS_VIRTUALES = 128;
+    private static final long REINTENTO_MIGRACION = 5000;  // Espera antes de volver a pedir una cesión rechazada (ms)
+    // Vendedor que ven los compradores cuando los mensajes los envía un fragmento
+    public static final String PARAMETRO_VENDEDOR = "vendedor-logico";
+    // Protocolo de los PROPOSE con el precio máximo de un comprador (puja automática)
+    public static final String PROTOCOLO_PUJA_AUTOMATICA = "puja-automatica";
+    // Protocolo del INFORM que avisa a los participantes de que la subasta de su conversación
+    // ha pasado a otro fragmento; el contenido es el título
+    public static final String PROTOCOLO_TRASLADO = "subasta-trasladada";
+    // Modalidades de subasta. Las que no son la inglesa van como protocolo de sus CFP
+    public static final String SUBASTA_INGLESA = "inglesa";
+    public static final String SUBASTA_SOBRE_CERRADO = "sobre-cerrado";
+    public static final String SUBASTA_HOLANDESA = "holandesa";
+    private final Map<String, MotorSubasta> motores = new HashMap<>();
+    private String modalidadPorDefecto = SUBASTA_INGLESA;  // Argumento "modalidad=<modalidad>"
+    private static final String PARAMETRO_EVENTO = "evento";
+    private static final String PARAMETRO_MODALIDAD = "modalidad";
+    // Catálogos importados: fichero -> contenido de la última importación, para reimportar solo los cambios
+    private final Map<Path, Map<String, ImportadorCsv.Fila>> importaciones = new HashMap<>();
+    // Estadísticas de la caché de contenido codificado
+    private long aciertosCache = 0;
+    private long fallosCache = 0;
+    private long nanosCodificacion = 0;
+    // Métricas (JMX y, con "puertoMetricas=<puerto>", HTTP en formato Prometheus)
+    private Metricas metricas;
+    private Metricas.Contador rondasLanzadas;
+    private Metricas.Contador timeoutsConfirmacion;
+    private Metricas.Contador ofertasSuplentes;
+    private Metricas.Histograma decodificacionParalela;
+    private Metricas.Contador mensajesEnviados;
+    private Metricas.Histograma duracionRonda;
+    private Metricas.Histograma destinatariosCfp;
+    private Metricas.Histograma latenciaPropuesta;
+    private Metricas.Histograma rondasPorSubasta;
+    private Metricas.Contador subastasAutomaticas;
 
     @Override
     protected void setup() {
         System.out.println(getLocalName() + ": Inicializando vendedor...");
 
+        Argumentos argumentos = new Argumentos(getArguments());
         //Registrar lenguaje y ontologia
         codec = new SLCodec();
+        codecCompacto = new LEAPCodec();
+        usarCodecCompacto = "leap".equalsIgnoreCase(argumentos.texto("codec", "sl"));
         ontology = IbrowOntology.getInstance();
         getContentManager().registerLanguage(codec);
+        getContentManager().registerLanguage(codecCompacto);
         getContentManager().registerOntology(ontology);
         // Configuración inicial de subastas
+        periodoRonda = argumentos.entero("periodoRonda", periodoRonda);
+        cierreAnticipado = argumentos.booleano("cierreAnticipado", cierreAnticipado);
+        quorumRespuestas = argumentos.decimal("quorum", quorumRespuestas);
+        graciaQuorum = argumentos.entero("graciaQuorum", graciaQuorum);
+        plazoConfirmacion = argumentos.entero("plazoConfirmacion", plazoConfirmacion);
+        factorIncremento = Math.max(1.0, argumentos.decimal("incrementoAdaptativo", factorIncremento));
+        sobrepujaMaxima = Math.max(0.0, argumentos.decimal("sobrepujaMaxima", sobrepujaMaxima));
+        cfpPorLotes = argumentos.booleano("cfpPorLotes", cfpPorLotes);
+        crearMetricas(argumentos);
         mapaSubastas = new HashMap<>();
-        // Crear la GUI del vendedor y hacerla visible
-        gui = new VendedorGUI(this);
-        gui.setVisible(true);
+        ruedaSubastas = new RuedaTemporal<>(RESOLUCION_RUEDA, CASILLAS_RUEDA);
+        motores.put(SUBASTA_INGLESA, new MotorIngles());
+        motores.put(SUBASTA_SOBRE_CERRADO, new MotorSobreCerrado());
+        motores.put(SUBASTA_HOLANDESA, new MotorHolandes());
+        modalidadPorDefecto = argumentos.texto("modalidad", modalidadPorDefecto);
+        if (!motores.containsKey(modalidadPorDefecto)) {
+            System.out.println(getLocalName() + ": modalidad desconocida '" + modalidadPorDefecto + "', se usa la inglesa.");
+            modalidadPorDefecto = SUBASTA_INGLESA;
+        }
+        coordinador = argumentos.texto("fragmento", null);
+        int fragmentos = (int) argumentos.entero("fragmentos", 0);
+        if (coordinador != null) {
+            // Los fragmentos no muestran ventana: sus eventos se reenvían al coordinador
+            gui = new ObservadorCoordinador();
+        } else if (argumentos.booleano("headless", false)) {
+            // Sin interfaz: los eventos van al observador recibido como argumento, si lo hay
+            gui = argumentos.objeto(ObservadorVendedor.class, new ObservadorVendedor() {});
+        } else {
+            // Crear la GUI del vendedor y hacerla visible
+            VendedorGUI ventana = new VendedorGUI(this);
+            ventana.setVisible(true);
+            gui = ventana;
+            String ficheroNotificaciones = argumentos.texto("notificaciones", null);
+            if (ficheroNotificaciones != null)
+                ventana.volcarNotificacionesA(Paths.get(ficheroNotificaciones));
+        }
         gui.agregarNotificacion("Agente vendedor iniciado. Configura las subastas usando la interfaz.");
-
-        // Comportamiento para recibir respuestas
-        addBehaviour(new ReceiveResponsesBehaviour());
-        addBehaviour(new ReceiveBuyerResponseBehaviour());
-        addBehaviour(new ReceiveNotUnderstoodBehaviour());
-        addBehaviour(new ReceiveRefuseBehaviour());
+        // Recuperar las subastas vivas si se ha activado la persistencia (en el coordinador la usan los fragmentos)
+        String persistencia = argumentos.texto("persistencia", null);
+        if (persistencia != null && fragmentos == 0)
+            recuperarSubastas(persistencia);
+
+        // Suscribirse al DF para conocer las altas y bajas de compradores
+        suscribirseAPaginasAmarillas();
+        // Planificador único para las rondas de todas las subastas
+        addBehaviour(new AuctionSchedulerBehaviour(this, RESOLUCION_RUEDA));
+        // Despachador único para todos los mensajes recibidos
+        despachador = new DespachadorMensajes(this, LOTE_DESPACHADOR);
+        despachador.registrarConversacion(suscripcionDF.getConversationId(), "notificaciones DF", this::procesarNotificacionDF);
+        // Con el pool de decodificación las propuestas se decodifican en paralelo antes de procesarlas
+        int hilosDecodificacion = (int) argumentos.entero("hilosDecodificacion", 0);
+        if (hilosDecodificacion > 0) {
+            decodificador = new DecodificadorParalelo(this, hilosDecodificacion, LOTE_DESPACHADOR, this::crearGestorContenido, decodificacionParalela);
+            addBehaviour(decodificador);
+            despachador.registrar(ACLMessage.PROPOSE, "propuestas", msg -> decodificador.decodificar(msg, this::procesarPropuesta));
+        } else {
+            despachador.registrar(ACLMessage.PROPOSE, "propuestas", this::procesarPropuesta);
+        }
+        despachador.registrar(ACLMessage.AGREE, "confirmaciones de compra", this::procesarConfirmacionCompra);
+        despachador.registrar(ACLMessage.REFUSE, "rechazos de compra", this::procesarRechazoCompra);
+        despachador.registrar(ACLMessage.NOT_UNDERSTOOD, "no entendidos", this::procesarNoEntendido);
+        if (coordinador != null)
+            despachador.registrarConversacion(conversacionFragmentos(coordinador), "coordinador", this::procesarMensajeCoordinador);
+        if (fragmentos > 0)
+            despachador.registrarConversacion(conversacionFragmentos(getLocalName()), "fragmentos", this::procesarMensajeFragmento);
+        addBehaviour(despachador);
+
+        if (coordinador != null) {
+            // Darse de alta en el coordinador, que empezará a asignarle títulos
+            enviar(mensajeFragmentos(ACLMessage.SUBSCRIBE, coordinador, "alta"));
+        }
+        if (fragmentos > 0) {
+            anilloFragmentos = new AnilloConsistente(NODOS_VIRTUALES);
+            contenedorPorFragmento = argumentos.booleano("contenedorPorFragmento", false);
+            ajustarFragmentos(fragmentos);
+        }
+        // Órdenes recibidas desde fuera de la plataforma (O2A), ejecutadas en el hilo del agente
+        setEnabledO2ACommunication(true, 0);
+        addBehaviour(new ProcesarOrdenesBehaviour());
+        // Subastas iniciales del catálogo
+        String catalogo = argumentos.texto("catalogo", null);
+        if (catalogo != null)
+            importarCatalogo(Paths.get(catalogo));
     }
 
     /**
@@ -60,22 +237,49 @@ public class Vendedor extends Agent {
         String bookTitle;  // Título del libro
         float currentPrice;  // Precio actual de la subasta
         float startingPrice;  // Precio actual de la subasta
-        float increment;  // Incremento del precio
+        float increment;  // Incremento del precio (paso mínimo)
+        float paso;  // Subida que se aplicará en la próxima ronda
+        float ultimoPaso;  // Subida aplicada para llegar al precio actual
+        int pujasAnteriores = 0;  // Pujas de la última ronda evaluada, para ajustar el paso
         Set<String> participants;  // Lista de participantes en la subasta
         Set<String> pujadores;  // Lista de participantes en la subasta
+        Set<String> respondedores = new HashSet<>();  // Participantes que ya han respondido al CFP de esta ronda
         int pujas=0;
         int ronda=0;
         boolean compraConfirmada=false;
         String lastBidder=null;  // El último postor (quien ha pujado en la ronda actual)
         String previousBidder=null;  // El postor de la ronda anterior (quien pujó antes de la última ronda)
         String buyer;
+        final String conversationId;  // Identificador único de la conversación de esta subasta
+        long secuencia = 0;  // Número de ronda monótono, nunca se reinicia
+        long periodo;  // Duración de cada ronda (ms)
+        RuedaTemporal.Entrada<Subasta> entradaRueda;  // Posición en la rueda del planificador
+        long inicioRonda = 0;  // Envío del CFP de la ronda actual (System.nanoTime), 0 si no hay ronda en curso
+        long loteCfp = -1;  // Lote en el que se envió el CFP de la ronda actual (modo por lotes)
+        // Contenido ya codificado en esta ronda, por tipo de mensaje y lenguaje (String o byte[])
+        final Map<String, Object> contenidoRonda = new HashMap<>();
+        // Pujas automáticas (o pujas en sobre cerrado): comprador -> precio máximo, en orden de llegada
+        final Map<String, Float> techos = new LinkedHashMap<>();
+        final MotorSubasta motor;
+        // Precio más alto al que ha pujado cada comprador, en orden de su primera puja
+        final Map<String, Float> maximos = new LinkedHashMap<>();
+        // Candidatos a los que ofrecer la compra si el ganador la rechaza o no confirma: comprador -> precio
+        Deque<Map.Entry<String, Float>> suplentes;
+        int intentoCompra = 0;  // Candidatos a los que se ha pedido la confirmación
+        // Holandesa: todos tienen techo y ninguno cubre el precio mínimo; se espera sin enviar CFP
+        boolean sinCobertura = false;
 
         // Constructor de la subasta
-        public Subasta(String bookTitle, float startingPrice, float increment) {
+        public Subasta(String conversationId, String bookTitle, float startingPrice, float increment, long periodo, MotorSubasta motor) {
+            this.motor = motor;
+            this.conversationId = conversationId;
             this.bookTitle = bookTitle;
             this.startingPrice=startingPrice;
             this.currentPrice = startingPrice;
             this.increment = increment;
+            this.paso = increment;
+            this.ultimoPaso = increment;
+            this.periodo = periodo;
             this.participants = new HashSet<>();
             this.pujadores = new HashSet<>();
             this.lastBidder = null;
@@ -84,137 +288,635 @@ public class Vendedor extends Agent {
 
         // Resetear para una nueva ronda de subasta
         public void resetForNewRound() {
+            if (ronda != 0) {
+                ultimoPaso = paso;
+                prepararRonda(currentPrice + paso);
+            } else {
+                paso = increment;
+                pujasAnteriores = 0;
+                prepararRonda(currentPrice);
+            }
+        }
+
+        /**
+         * Calcular el paso de la próxima ronda a partir de las pujas de la que termina. Con
+         * más de dos postores que no abandonan el paso crece geométricamente, hasta la
+         * sobrepuja máxima; cuando los postores empiezan a abandonar se reduce, y con dos
+         * o menos vuelve al incremento configurado para no pasarse del precio final.
+         */
+        float siguientePaso(float paso, int pujas, int pujasAnteriores, float precio) {
+            if (pujas <= 2 || factorIncremento <= 1.0)
+                return increment;
+            if (pujas < pujasAnteriores)
+                return (float) Math.max(increment, paso / factorIncremento);
+            double tope = Math.max(increment, sobrepujaMaxima * precio);
+            return (float) Math.max(increment, Math.min(paso * factorIncremento, tope));
+        }
+
+        void ajustarPaso() {
+            paso = siguientePaso(paso, pujas, pujasAnteriores, currentPrice);
+            pujasAnteriores = pujas;
+        }
+
+        // Empezar una ronda con el precio indicado
+        void prepararRonda(float precio) {
             this.previousBidder = this.lastBidder;  // Guardar el último postor de la ronda anterior
             this.lastBidder = null;  // Limpiar el último postor para la nueva ronda
             this.pujas=0;
             this.pujadores=new HashSet<>();
-            if(ronda!=0)
-                this.currentPrice+=increment;
+            this.respondedores.clear();
+            this.contenidoRonda.clear();
+            this.currentPrice = precio;
             this.ronda++;
+            this.secuencia++;
         }
     }
 
     /**
-     * Comportamiento principal que maneja las rondas de una subasta específica.
+     * Comportamiento principal que planifica las rondas de todas las subastas.
+     * En cada tick solo se procesan las subastas cuya ronda ha vencido.
      */
-    private class AuctionBehaviour extends TickerBehaviour {
-        private final Subasta subasta;
+    private class AuctionSchedulerBehaviour extends TickerBehaviour {
+        private final List<Subasta> vencidas = new ArrayList<>();
 
-        public AuctionBehaviour(Agent a, Subasta subasta, long period) {
-            super(a, period);
-            this.subasta = subasta;
+        public AuctionSchedulerBehaviour(Agent a, long resolucion) {
+            super(a, resolucion);
         }
 
         @Override
         protected void onTick() {
-            boolean continuar=true;
+            long ahora = System.currentTimeMillis();
+            ruedaSubastas.avanzar(ahora, vencidas);
+            loteCfp++;
+            for (Subasta subasta : vencidas) {
+                if (subasta.inicioRonda != 0) {
+                    duracionRonda.registrar((System.nanoTime() - subasta.inicioRonda) / 1_000_000);
+                    subasta.inicioRonda = 0;
+                }
+                if (subasta.motor.ejecutarRonda(subasta)) {
+                    registrarRonda(subasta);
+                    ruedaSubastas.reprogramar(subasta.entradaRueda, ahora + subasta.periodo);
+                }
+            }
+            vencidas.clear();
+            enviarLotesCfp();
+            if (registro != null && registro.getEventosDesdeInstantanea() >= EVENTOS_POR_INSTANTANEA)
+                guardarInstantanea();
+        }
+    }
+
+    /**
+     * Modalidad de subasta: decide qué hacer al vencer cada ronda y con cada respuesta a un CFP.
+     */
+    private interface MotorSubasta {
+        /**
+         * Nombre de la modalidad, que es también el protocolo de sus CFP (null en la inglesa).
+         */
+        String getProtocolo();
+
+        /**
+         * Evaluar la ronda que acaba de vencer y lanzar la siguiente.
+         * Devuelve false cuando la subasta ha terminado y no debe volver a programarse.
+         */
+        boolean ejecutarRonda(Subasta subasta);
+
+        /**
+         * Procesar un PROPOSE válido de la ronda actual. El precio es el del libro de la propuesta.
+         */
+        void procesarPropuesta(Subasta subasta, String comprador, boolean respuesta, float precio, String id);
+    }
+
+    /**
+     * Subasta inglesa: rondas ascendentes hasta que solo queda un postor (modalidad por defecto).
+     */
+    private class MotorIngles implements MotorSubasta {
+        @Override
+        public String getProtocolo() {
+            return null;
+        }
+
+        @Override
+        public boolean ejecutarRonda(Subasta subasta) {
+            return ejecutarRondaInglesa(subasta);
+        }
+
+        @Override
+        public void procesarPropuesta(Subasta subasta, String comprador, boolean respuesta, float precio, String id) {
+            if (respuesta) {
+                // Solo el primer postor de la ronda recibe ACCEPT
+                if (anotarPuja(subasta, comprador))
+                    sendAcceptProposal(subasta, comprador, id);
+                else
+                    sendRejectProposal(subasta, comprador, id);
+            } else {
+                sendRejectProposal(subasta, comprador, id);
+            }
+        }
+    }
+
+    /**
+     * Subasta en sobre cerrado de segundo precio (Vickrey): una sola ronda en la que cada
+     * comprador envía su precio máximo en el libro del PROPOSE. Gana la puja más alta y paga
+     * la segunda, o el precio de salida si es la única. Si nadie puja se repite la ronda.
+     */
+    private class MotorSobreCerrado implements MotorSubasta {
+        @Override
+        public String getProtocolo() {
+            return SUBASTA_SOBRE_CERRADO;
+        }
+
+        @Override
+        public boolean ejecutarRonda(Subasta subasta) {
             if (subasta.ronda != 0) {
-                if (subasta.pujas == 0) {  // Nadie pujó en la ronda anterior
-                    // Si no hubo pujas, el ganador es el previousBidder
-                    if (subasta.previousBidder != null) {
-                        subasta.buyer= subasta.previousBidder;
-                        gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': Nadie pujó en la ronda anterior. Ganador: " + subasta.previousBidder);
-                        subasta.currentPrice -= subasta.increment;
-                        informResult(subasta, subasta.buyer);
-
-                        continuar = false;
-
-                        // Actualizar la tabla de subastas activas y finalizadas
-                        gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment,"Ganador: " + subasta.previousBidder, subasta.ronda);
-
-                    } else { // Caso de la ronda 1, cuando nadie haya pujado
-                        subasta.ronda = 0;
-                        // Aquí actualizamos la tabla de subastas activas para reflejar que no hubo pujas
-                        gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Sin pujas", subasta.ronda);
+                String ganador = null;
+                float mayor = Float.NEGATIVE_INFINITY;
+                float segundo = subasta.startingPrice;
+                // A igual puja gana la primera recibida
+                for (Map.Entry<String, Float> puja : subasta.techos.entrySet()) {
+                    float valor = puja.getValue();
+                    if (!subasta.participants.contains(puja.getKey()) || valor < subasta.startingPrice)
+                        continue;
+                    if (valor > mayor) {
+                        segundo = Math.max(segundo, mayor);
+                        mayor = valor;
+                        ganador = puja.getKey();
+                    } else {
+                        segundo = Math.max(segundo, valor);
                     }
-                } else if (subasta.pujas == 1) {  // Solo una puja en la ronda anterior
-                    // El ganador es el lastBidder
-                    gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': Solo una puja en la ronda anterior. Ganador: " + subasta.lastBidder);
-                    informResult(subasta, subasta.lastBidder);
-                    subasta.buyer= subasta.lastBidder;
-                    continuar = false;
-
-                    // Actualizar la tabla de subastas activas y finalizadas
-                    gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment,"Ganador: " + subasta.lastBidder, subasta.ronda);
-                } else {  // Más de una puja en la ronda anterior
-                    // Enviar un acceptProposal a lastBidder para indicarle que no abandone la subasta
-                    gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': Más de una puja en la ronda anterior.");
-                    informRoundResults(subasta);
-
-                    // Actualizar la tabla de subastas activas con los nuevos detalles de la subasta
-                    gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment,String.join(", ", subasta.pujadores), subasta.ronda);
                 }
+                if (ganador != null) {
+                    subasta.suplentes = suplentesSobreCerrado(subasta, ganador);
+                    terminarConGanador(subasta, ganador, segundo, "Sobre cerrado: gana " + ganador + " con " + mayor + " y paga " + segundo);
+                    return false;
+                }
+                subasta.ronda = 0;
+                gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Sin pujas", subasta.ronda);
+            }
+            subasta.prepararRonda(subasta.startingPrice);
+            updateParticipants(subasta);
+            if (subasta.participants.isEmpty()) {
+                subasta.ronda = 0;
+                gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Esperando compradores", subasta.ronda);
+                return true;
+            }
+            // Los compradores que ya tienen puja registrada no necesitan el CFP
+            List<String> destinatarios = new ArrayList<>();
+            for (String participant : subasta.participants) {
+                if (subasta.techos.containsKey(participant))
+                    subasta.respondedores.add(participant);
+                else
+                    destinatarios.add(participant);
+            }
+            sendCallForProposal(subasta, destinatarios);
+            return true;
+        }
+
+        /**
+         * Los demás pujadores, de mayor a menor puja; cada uno pagaría la puja siguiente
+         * (o el precio de salida), como si el anterior no hubiera pujado.
+         */
+        private Deque<Map.Entry<String, Float>> suplentesSobreCerrado(Subasta subasta, String ganador) {
+            List<Map.Entry<String, Float>> pujas = new ArrayList<>();
+            for (Map.Entry<String, Float> puja : subasta.techos.entrySet()) {
+                if (!puja.getKey().equals(ganador) && subasta.participants.contains(puja.getKey())
+                        && puja.getValue() >= subasta.startingPrice)
+                    pujas.add(puja);
+            }
+            pujas.sort(Map.Entry.<String, Float>comparingByValue().reversed());
+            Deque<Map.Entry<String, Float>> suplentes = new ArrayDeque<>(pujas.size());
+            for (int i = 0; i < pujas.size(); i++) {
+                float siguiente = i + 1 < pujas.size() ? pujas.get(i + 1).getValue() : subasta.startingPrice;
+                suplentes.add(Map.entry(pujas.get(i).getKey(), Math.max(siguiente, subasta.startingPrice)));
             }
+            return suplentes;
+        }
+
+        @Override
+        public void procesarPropuesta(Subasta subasta, String comprador, boolean respuesta, float precio, String id) {
+            if (respuesta && precio >= subasta.startingPrice) {
+                subasta.techos.put(comprador, precio);
+                subasta.pujas++;
+                subasta.pujadores.add(comprador);
+            } else {
+                subasta.techos.remove(comprador);
+            }
+        }
+    }
+
+    /**
+     * Subasta holandesa: el precio empieza en el de salida y baja un incremento por ronda.
+     * Gana el primero que acepta; la ronda se cierra en cuanto llega la primera aceptación.
+     * Si el precio llega a cero sin compradores, la subasta vuelve a empezar.
+     */
+    private class MotorHolandes implements MotorSubasta {
+        @Override
+        public String getProtocolo() {
+            return SUBASTA_HOLANDESA;
+        }
 
-            if(!continuar){
-                gui.agregarNotificacion("Subasta finalizada para '" + subasta.bookTitle + "'.");
-                myAgent.removeBehaviour(this); // Elimina el comportamiento
-                return; // Salir del action
+        @Override
+        public boolean ejecutarRonda(Subasta subasta) {
+            if (subasta.ronda != 0 && subasta.pujas > 0) {
+                // previousBidder es el primero que aceptó en esta ronda
+                terminarConGanador(subasta, subasta.previousBidder, subasta.currentPrice, "Holandesa: acepta " + subasta.previousBidder);
+                return false;
+            }
+            float precio = subasta.ronda == 0 ? subasta.startingPrice : subasta.currentPrice - subasta.increment;
+            if (subasta.sinCobertura) {
+                // Ya está en el precio mínimo: se queda ahí hasta que cambien los participantes o sus techos
+                precio = subasta.currentPrice;
+            } else if (precio <= 0) {
+                gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': el precio ha llegado a cero sin compradores. Se reinicia.");
+                subasta.ronda = 0;
+                precio = subasta.startingPrice;
             }
-            // Pasar a la siguiente ronda
-            subasta.resetForNewRound();
-            // Consultar las Páginas Amarillas para localizar compradores
+            subasta.prepararRonda(precio);
             updateParticipants(subasta);
-            // Si no hay participantes
             if (subasta.participants.isEmpty()) {
-                if (subasta.ronda == 1) {  // Si es la primera ronda se espera
-                    subasta.ronda=0;
-                    // Aquí actualizamos el estado de la subasta en la tabla de activas
-                    gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Esperando compradores", subasta.ronda);
-                    return;  // No hacer nada hasta que haya participantes
-                } else {
-                    // Si no es la primera ronda, se reinicia la subasta
-                    subasta.previousBidder = null;
-                    subasta.lastBidder = null;
-                    subasta.currentPrice = subasta.startingPrice;
-                    subasta.ronda = 0;
+                subasta.ronda = 0;
+                subasta.sinCobertura = false;
+                subasta.currentPrice = subasta.startingPrice;
+                gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Esperando compradores", subasta.ronda);
+                return true;
+            }
+            // Precio máximo registrado más alto; a igualdad, el primero registrado
+            String mejor = null;
+            float mayor = Float.NEGATIVE_INFINITY;
+            List<String> destinatarios = new ArrayList<>();
+            for (String participant : subasta.participants) {
+                Float techo = subasta.techos.get(participant);
+                if (techo == null)
+                    destinatarios.add(participant);
+                else if (techo > mayor || (techo == mayor && antes(subasta, participant, mejor))) {
+                    mayor = techo;
+                    mejor = participant;
+                }
+            }
+            // Si todos tienen techo, se baja el precio sin más rondas hasta que alguno lo cubra
+            if (destinatarios.isEmpty() && subasta.increment > 0) {
+                while (mayor < subasta.currentPrice && subasta.currentPrice - subasta.increment > 0) {
+                    subasta.currentPrice -= subasta.increment;
+                    subasta.ronda++;
+                }
+            }
+            if (mejor != null && mayor >= subasta.currentPrice) {
+                anotarPuja(subasta, mejor);
+                terminarConGanador(subasta, mejor, subasta.currentPrice, "Holandesa: acepta " + mejor + " (puja automática)");
+                return false;
+            }
+            if (destinatarios.isEmpty()) {
+                // Ningún techo cubre el precio más bajo posible: en vez de enviar CFP vacíos y
+                // reiniciar al llegar a cero, se espera hasta que entre un participante o cambie un techo
+                if (!subasta.sinCobertura) {
+                    subasta.sinCobertura = true;
+                    gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': ningún precio máximo cubre " + subasta.currentPrice + ". En espera.");
+                    gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Sin precios máximos suficientes", subasta.ronda);
+                }
+                return true;
+            }
+            subasta.sinCobertura = false;
+            sendCallForProposal(subasta, destinatarios);
+            return true;
+        }
 
-                    // Aquí actualizamos la tabla de subastas activas para reflejar el reinicio
-                    gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Reiniciada", subasta.ronda);
-                    return;
+        private boolean antes(Subasta subasta, String a, String b) {
+            for (String comprador : subasta.techos.keySet()) {
+                if (comprador.equals(a))
+                    return true;
+                if (comprador.equals(b))
+                    return false;
+            }
+            return false;
+        }
+
+        @Override
+        public void procesarPropuesta(Subasta subasta, String comprador, boolean respuesta, float precio, String id) {
+            // Como en la inglesa, solo el primero en aceptar recibe ACCEPT; su aceptación cierra la ronda
+            if (respuesta && anotarPuja(subasta, comprador)) {
+                sendAcceptProposal(subasta, comprador, id);
+                if (subasta.entradaRueda != null && subasta.entradaRueda.isProgramada())
+                    ruedaSubastas.reprogramar(subasta.entradaRueda, System.currentTimeMillis());
+            } else {
+                sendRejectProposal(subasta, comprador, id);
+            }
+        }
+    }
+
+    /**
+     * Cerrar una subasta con ganador al precio indicado y pedirle la confirmación de compra.
+     */
+    private void terminarConGanador(Subasta subasta, String ganador, float precio, String detalle) {
+        subasta.currentPrice = precio;
+        subasta.buyer = ganador;
+        gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': " + detalle + ".");
+        registrarGanador(subasta);
+        informResult(subasta, ganador);
+        gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Ganador: " + ganador, subasta.ronda);
+        gui.agregarNotificacion("Subasta finalizada para '" + subasta.bookTitle + "'.");
+    }
+
+    /**
+     * Subasta inglesa: evaluar la ronda que acaba de vencer y lanzar la siguiente.
+     * Devuelve false cuando la subasta ha terminado y no debe volver a programarse.
+     */
+    private boolean ejecutarRondaInglesa(Subasta subasta) {
+        boolean continuar=true;
+        if (subasta.ronda != 0) {
+            if (subasta.pujas == 0) {  // Nadie pujó en la ronda anterior
+                // Si no hubo pujas, el ganador es el previousBidder
+                if (subasta.previousBidder != null) {
+                    subasta.buyer= subasta.previousBidder;
+                    gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': Nadie pujó en la ronda anterior. Ganador: " + subasta.previousBidder);
+                    subasta.currentPrice -= subasta.ultimoPaso;
+                    registrarGanador(subasta);
+                    informResult(subasta, subasta.buyer);
+
+                    continuar = false;
+
+                    // Actualizar la tabla de subastas activas y finalizadas
+                    gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment,"Ganador: " + subasta.previousBidder, subasta.ronda);
+
+                } else { // Caso de la ronda 1, cuando nadie haya pujado
+                    subasta.ronda = 0;
+                    // Aquí actualizamos la tabla de subastas activas para reflejar que no hubo pujas
+                    gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Sin pujas", subasta.ronda);
                 }
+            } else if (subasta.pujas == 1) {  // Solo una puja en la ronda anterior
+                // El ganador es el lastBidder
+                gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': Solo una puja en la ronda anterior. Ganador: " + subasta.lastBidder);
+                subasta.buyer= subasta.lastBidder;
+                registrarGanador(subasta);
+                informResult(subasta, subasta.lastBidder);
+                continuar = false;
+
+                // Actualizar la tabla de subastas activas y finalizadas
+                gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment,"Ganador: " + subasta.lastBidder, subasta.ronda);
+            } else {  // Más de una puja en la ronda anterior
+                // Enviar un acceptProposal a lastBidder para indicarle que no abandone la subasta
+                gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': Más de una puja en la ronda anterior.");
+                // El paso de la próxima ronda va en el resultado de esta
+                subasta.ajustarPaso();
+                informRoundResults(subasta);
+
+                // Actualizar la tabla de subastas activas con los nuevos detalles de la subasta
+                gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.paso,String.join(", ", subasta.pujadores), subasta.ronda);
+            }
+        }
+
+        if(!continuar){
+            gui.agregarNotificacion("Subasta finalizada para '" + subasta.bookTitle + "'.");
+            return false; // No se vuelve a programar
+        }
+        // Pasar a la siguiente ronda
+        subasta.resetForNewRound();
+        // Consultar las Páginas Amarillas para localizar compradores
+        updateParticipants(subasta);
+        // Si no hay participantes
+        if (subasta.participants.isEmpty()) {
+            if (subasta.ronda == 1) {  // Si es la primera ronda se espera
+                subasta.ronda=0;
+                // Aquí actualizamos el estado de la subasta en la tabla de activas
+                gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Esperando compradores", subasta.ronda);
+                return true;  // No hacer nada hasta que haya participantes
+            } else {
+                // Si no es la primera ronda, se reinicia la subasta
+                subasta.previousBidder = null;
+                subasta.lastBidder = null;
+                subasta.currentPrice = subasta.startingPrice;
+                subasta.ronda = 0;
+                subasta.maximos.clear();
+
+                // Aquí actualizamos la tabla de subastas activas para reflejar el reinicio
+                gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Reiniciada", subasta.ronda);
+                return true;
+            }
+        }
+        // Si todos los participantes pujan automáticamente, la subasta se resuelve sin más rondas
+        if (resolverPujasAutomaticas(subasta)) {
+            gui.agregarNotificacion("Subasta finalizada para '" + subasta.bookTitle + "'.");
+            return false;
+        }
+        sendCallForProposal(subasta, pujasAutomaticas(subasta));
+        return true;
+    }
+
+    /**
+     * Anotar la puja de los compradores con puja automática cuyo techo cubre el precio de la
+     * ronda. Devuelve los participantes a los que hay que enviar el CFP.
+     */
+    private Collection<String> pujasAutomaticas(Subasta subasta) {
+        if (subasta.techos.isEmpty())
+            return subasta.participants;
+        List<String> destinatarios = new ArrayList<>();
+        for (String participant : subasta.participants) {
+            Float techo = subasta.techos.get(participant);
+            if (techo == null) {
+                destinatarios.add(participant);
+                continue;
             }
-            sendCallForProposal(subasta);
+            subasta.respondedores.add(participant);
+            if (techo >= subasta.currentPrice)
+                anotarPuja(subasta, participant);
+        }
+        return destinatarios;
+    }
 
+    /**
+     * Resolver la subasta a partir de la ronda actual cuando todos los participantes tienen
+     * registrado su precio máximo. Se simulan las mismas rondas que con CFP: el precio sube
+     * mientras al menos dos techos lo cubren; gana el único que lo cubre o, si no queda
+     * ninguno, el mismo que en una ronda en silencio con CFP: el último postor de la ronda
+     * anterior (las pujas automáticas se anotan en el orden de los participantes, como en
+     * pujasAutomaticas), al precio de esa ronda. Devuelve false si no se puede resolver
+     * (nadie cubre el precio de la primera ronda).
+     */
+    private boolean resolverPujasAutomaticas(Subasta subasta) {
+        if (subasta.techos.isEmpty() || subasta.increment <= 0 || !subasta.techos.keySet().containsAll(subasta.participants))
+            return false;
+        float mayor = Float.NEGATIVE_INFINITY;
+        float segundo = Float.NEGATIVE_INFINITY;
+        String mejor = null;
+        for (String participant : subasta.participants) {
+            float techo = subasta.techos.get(participant);
+            if (techo > mayor) {
+                segundo = mayor;
+                mayor = techo;
+                mejor = participant;
+            } else if (techo > segundo) {
+                segundo = techo;
+            }
+        }
+        float precio = subasta.currentPrice;
+        float anterior = precio;
+        float paso = subasta.paso;
+        int pujasAnteriores = subasta.pujasAnteriores;
+        int ronda = subasta.ronda;
+        boolean subido = false;
+        while (segundo >= precio) {
+            // El paso sigue la misma política que las rondas con CFP
+            int pujas = 0;
+            for (String participant : subasta.participants) {
+                if (subasta.techos.get(participant) >= precio) {
+                    pujas++;
+                    subasta.maximos.put(participant, precio);
+                }
+            }
+            paso = subasta.siguientePaso(paso, pujas, pujasAnteriores, precio);
+            pujasAnteriores = pujas;
+            anterior = precio;
+            precio += paso;
+            ronda++;
+            subido = true;
+        }
+        String ganador;
+        if (mayor >= precio) {
+            ganador = mejor;  // Única puja en la última ronda
+        } else if (subido) {
+            // Empate en la ronda anterior: como en las rondas con CFP, prepararRonda deja como
+            // postor anterior al último que pujó, y las automáticas pujan en el orden de participants
+            ganador = null;
+            for (String participant : subasta.participants) {
+                if (subasta.techos.get(participant) >= anterior)
+                    ganador = participant;
+            }
+            precio = anterior;
+        } else if (subasta.previousBidder != null) {
+            ganador = subasta.previousBidder;  // Nadie cubre esta ronda: gana el postor de la anterior
+            precio -= subasta.ultimoPaso;
+        } else {
+            return false;
         }
+        subasta.ronda = ronda;
+        subasta.currentPrice = precio;
+        subasta.buyer = ganador;
+        subastasAutomaticas.incrementar();
+        gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': resuelta con pujas automáticas en la ronda " + ronda + ". Ganador: " + ganador);
+        registrarGanador(subasta);
+        informResult(subasta, ganador);
+        gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Ganador: " + ganador, subasta.ronda);
+        return true;
     }
 
     /**
-     * Actualizar la lista de compradores interesados para una subasta.
+     * Actualizar la lista de compradores interesados para una subasta a partir
+     * del índice de intereses que mantiene la suscripción al DF.
      */
     private void updateParticipants(Subasta subasta) {
+        Set<String> interesados = interesadosPorTitulo.getOrDefault(subasta.bookTitle, Collections.emptySet());
+        //Informar a los nuevos participantes de la subasta
+        for (String participant : interesados) {
+            if (!subasta.participants.contains(participant)) {
+                informStart(subasta, participant);
+            }
+        }
+        subasta.participants = new HashSet<>(interesados);
+    }
+
+    /**
+     * Sustituir en el índice los títulos que anuncia un comprador.
+     */
+    private void actualizarIntereses(String comprador, Set<String> titulos) {
+        Set<String> anteriores = titulosPorComprador.remove(comprador);
+        if (anteriores != null) {
+            for (String titulo : anteriores) {
+                Set<String> interesados = interesadosPorTitulo.get(titulo);
+                interesados.remove(comprador);
+                if (interesados.isEmpty())
+                    interesadosPorTitulo.remove(titulo);
+            }
+        }
+        if (titulos.isEmpty())
+            return;
+        titulosPorComprador.put(comprador, titulos);
+        for (String titulo : titulos) {
+            interesadosPorTitulo.computeIfAbsent(titulo, t -> new HashSet<>()).add(comprador);
+        }
+    }
+
+    /**
+     * Suscribirse una única vez al DF para recibir las altas, bajas y cambios de
+     * intereses de los "auction-participant".
+     */
+    private void suscribirseAPaginasAmarillas() {
         DFAgentDescription template = new DFAgentDescription();
         ServiceDescription sd = new ServiceDescription();
         sd.setType("auction-participant");
         template.addServices(sd);
+        suscripcionDF = DFService.createSubscriptionMessage(this, getDefaultDF(), template, null);
+        // Las notificaciones del DF llegan con este conversation-id y se encaminan por él
+        suscripcionDF.setConversationId("suscripcion-df-" + getLocalName());
+        enviar(suscripcionDF);
+    }
 
+    /**
+     * Procesar las notificaciones del DF y mantener el índice de compradores por título.
+     */
+    private void procesarNotificacionDF(ACLMessage msg) {
+        if (msg.getPerformative() != ACLMessage.INFORM)
+            return;  // AGREE/REFUSE de la propia suscripción
         try {
-            DFAgentDescription[] results = DFService.search(this, template);
-            Set<String> newParticipants = new HashSet<>();  // Conjunto para los nuevos participantes
-
-            // Iterar sobre los resultados encontrados
+            DFAgentDescription[] results = DFService.decodeNotification(msg.getContent());
             for (DFAgentDescription result : results) {
                 String participant = result.getName().getLocalName();
-
-               if(!(subasta.participants.contains(participant))){
-                            informStart(subasta, participant);
-                        }
-                newParticipants.add(participant);
-
+                // Una descripción sin servicios indica que el agente se ha dado de baja
+                Set<String> titulos = new HashSet<>();
+                boolean compacto = false;
+                Iterator<?> servicios = result.getAllServices();
+                while (servicios.hasNext()) {
+                    ServiceDescription sd = (ServiceDescription) servicios.next();
+                    Iterator<?> lenguajes = sd.getAllLanguages();
+                    while (lenguajes.hasNext()) {
+                        if (codecCompacto.getName().equals(lenguajes.next()))
+                            compacto = true;
+                    }
+                    Iterator<?> propiedades = sd.getAllProperties();
+                    while (propiedades.hasNext()) {
+                        Property propiedad = (Property) propiedades.next();
+                        if (Comprador.PROPIEDAD_LIBRO.equals(propiedad.getName()))
+                            titulos.add(String.valueOf(propiedad.getValue()));
+                    }
+                }
+                actualizarIntereses(participant, titulos);
+                if (compacto)
+                    compradoresCompactos.add(participant);
+                else
+                    compradoresCompactos.remove(participant);
             }
-            // Añadir los nuevos participantes a la lista de la subasta
-            subasta.participants=newParticipants;
-            //Informar a los nuevos participantes de la subasta
         } catch (FIPAException fe) {
             fe.printStackTrace();
         }
     }
 
-
     /**
-     * Enviar mensajes de tipo CFP a los compradores interesados en una subasta.
+     * Enviar mensajes de tipo CFP a los compradores indicados de una subasta.
      */
-    private void sendCallForProposal(Subasta subasta) {
+    private void sendCallForProposal(Subasta subasta, Collection<String> destinatarios) {
+        // Crear un mensaje CFP (Call For Proposal)
+        ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+        cfp.setOntology(ontology.getName()); // Usar la ontología registrada
+        cfp.setProtocol(subasta.motor.getProtocolo());
+        // Conversación de la subasta y ronda actual: los PROPOSE se correlacionan con ellos
+        cfp.setConversationId(subasta.conversationId);
+        cfp.setReplyWith(idMensaje(subasta, "cfp"));
+        rondasLanzadas.incrementar();
+        destinatariosCfp.registrar(destinatarios.size());
+        subasta.inicioRonda = System.nanoTime();
+        if (cfpPorLotes) {
+            // Se envía al final del tick, junto con las demás subastas de cada comprador
+            subasta.loteCfp = loteCfp;
+            Map<String, List<Subasta>> porComprador = cfpPendientes.computeIfAbsent(subasta.motor.getProtocolo(), p -> new HashMap<>());
+            for (String destinatario : destinatarios)
+                porComprador.computeIfAbsent(destinatario, d -> new ArrayList<>()).add(subasta);
+            return;
+        }
+
+        // Envolver el objeto `Ofertar` en una acción y establecerla como contenido del mensaje
+        enviarAParticipantes(cfp, destinatarios, msg -> rellenarContenido(msg, subasta, "cfp", () -> {
+            return getDefaultOfertar(subasta);
+        }));
+    }
+
+    private static DefaultOfertar getDefaultOfertar(Subasta subasta) {
         DefaultOfertar ofertarAction = new DefaultOfertar();
         DefaultOferta oferta = new DefaultOferta();
         DefaultLibro libro=new DefaultLibro();
@@ -222,214 +924,438 @@ public class Vendedor extends Agent {
         libro.setTitulo(subasta.bookTitle);
         oferta.setProducto(libro);
         ofertarAction.setOferta(oferta);
-
-        // Crear un mensaje CFP (Call For Proposal)
-        ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
-        cfp.setLanguage(codec.getName()); // Usar el codec (p. ej., SL)
-        cfp.setOntology(ontology.getName()); // Usar la ontología registrada
-
-        // Agregar los receptores
-        for (String participant : subasta.participants) {
-            cfp.addReceiver(new jade.core.AID(participant, jade.core.AID.ISLOCALNAME));
-        }
-        // Envolver el objeto `Ofertar` en una acción y establecerla como contenido del mensaje
-        Action action = new Action(getAID(), ofertarAction);
-        try {
-            getContentManager().fillContent(cfp, action);
-        } catch (Codec.CodecException | OntologyException e) {
-            throw new RuntimeException(e);
-        }
-        // Generar un identificador único para el mensaje
-        String uniqueId = "cfp" + System.currentTimeMillis();
-        cfp.setReplyWith(uniqueId);
-        send(cfp);
+        return ofertarAction;
     }
 
     /**
-     * Recibir y procesar respuestas de los compradores.
+     * Enviar los CFP acumulados en el tick: a cada comprador, un mensaje por modalidad con
+     * una lista de Ofertar, una por subasta. Los compradores con las mismas subastas
+     * comparten mensaje, así que cada lote se codifica una vez por lenguaje.
      */
-    private class ReceiveResponsesBehaviour extends CyclicBehaviour {
-        @Override
-        public void action() {
-            ACLMessage msg = receive();
-            String[] content;
-            String bookTitle = null;
-            boolean respuesta = false;
-            Subasta subasta = null;
-            String id;
-
-            if (msg != null) {
-                // Verificar si el mensaje es del tipo PROPOSE
-                if (msg.getPerformative() == ACLMessage.PROPOSE) {
-                    id=msg.getReplyWith();
+    private void enviarLotesCfp() {
+        if (cfpPendientes.isEmpty())
+            return;
+        for (Map.Entry<String, Map<String, List<Subasta>>> modalidad : cfpPendientes.entrySet()) {
+            Map<List<Subasta>, List<String>> grupos = new HashMap<>();
+            for (Map.Entry<String, List<Subasta>> comprador : modalidad.getValue().entrySet())
+                grupos.computeIfAbsent(comprador.getValue(), l -> new ArrayList<>()).add(comprador.getKey());
+            for (Map.Entry<List<Subasta>, List<String>> grupo : grupos.entrySet()) {
+                ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+                cfp.setOntology(ontology.getName());
+                cfp.setProtocol(modalidad.getKey());
+                cfp.setConversationId(conversacionLotes());
+                // Mismo formato que idMensaje: las propuestas se validan con el número de lote
+                cfp.setReplyWith(getLocalName() + "#" + loteCfp + ":lote");
+                List<Subasta> subastas = grupo.getKey();
+                enviarAParticipantes(cfp, grupo.getValue(), msg -> {
+                    ContentElementList ofertas = new ContentElementList();
+                    for (Subasta subasta : subastas)
+                        ofertas.add(new Action(getAID(), getDefaultOfertar(subasta)));
                     try {
-                        // Extraer el contenido del mensaje usando el gestor de contenido
-                        Action a = (Action) getContentManager().extractContent(msg);
-                        DefaultProponer propuesta = (DefaultProponer) a.getAction();
-                        Libro libro=propuesta.getLibro();
-                        bookTitle=libro.getTitulo();
-                        respuesta=propuesta.getRespuesta();
-                        // Validar el contenido del mensaje
-                        if (mapaSubastas.get(bookTitle) == null) {
-                            throw new Exception("No se encuentra el libro en las subastas activas.");
-                        }
-                        subasta = mapaSubastas.get(bookTitle);  // Buscar la subasta correspondiente
-
-                    } catch (Exception e) {
-                            ACLMessage reply = msg.createReply();
-                            reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
-                            reply.setContent("No se ha entendido un mensaje inform");
+                        getContentManager().fillContent(msg, ofertas);
+                    } catch (Codec.CodecException | OntologyException e) {
+                        throw new RuntimeException(e);
                     }
-                    // Si la subasta existe, procesar la respuesta
-                    if (subasta != null) {
-                        if (respuesta) {
-                            subasta.pujas++;
-                            subasta.pujadores.add(msg.getSender().getLocalName());
-                            // Si es la primera vez que alguien puja, actualizamos previousBidder
-                            if (subasta.lastBidder == null) {
-                                subasta.previousBidder = msg.getSender().getLocalName();  // Registrar al primer postor
-                                sendAcceptProposal(subasta, subasta.previousBidder, id);
-                            } else {
-                                sendRejectProposal(subasta, msg.getSender().getLocalName(), id);
-                            }
-                            // Actualizar el último postor
-                            subasta.lastBidder = msg.getSender().getLocalName();
-                        } else {
-                            sendRejectProposal(subasta, msg.getSender().getLocalName(), id);
-                        }
-                    }
-                } else {
-                    block();
-                }
-            } else {
-                block();
+                });
             }
         }
+        cfpPendientes.clear();
     }
 
+    private String conversacionLotes() {
+        return "lote-" + getLocalName();
+    }
 
     /**
-     * Informar a los participantes del resultado de una subasta.
+     * Lenguaje con el que se codifican los mensajes para un participante: el compacto
+     * solo si ambos lados lo admiten, SL en otro caso.
      */
-    private void informResult(Subasta subasta, String winner) {
+    private String lenguajePara(String participant) {
+        if (usarCodecCompacto && compradoresCompactos.contains(participant))
+            return codecCompacto.getName();
+        return codec.getName();
+    }
 
-        // Crear un mensaje Inform
-        ACLMessage inform = new ACLMessage(ACLMessage.INFORM);
-        inform.setLanguage(codec.getName());
-        inform.setOntology(ontology.getName());
-        // Agregar los receptores
-        for (String participant : subasta.participants) {
-            inform.addReceiver(new jade.core.AID(participant, jade.core.AID.ISLOCALNAME));
+    /**
+     * Enviar un mensaje a varios participantes agrupándolos por lenguaje: se envía una copia
+     * por lenguaje y el contenido se rellena una vez para cada una.
+     */
+    private void enviarAParticipantes(ACLMessage msg, Collection<String> participants, Consumer<ACLMessage> rellenar) {
+        marcarVendedor(msg);
+        Map<String, ACLMessage> porLenguaje = new HashMap<>();
+        for (String participant : participants) {
+            ACLMessage copia = porLenguaje.computeIfAbsent(lenguajePara(participant), lenguaje -> {
+                ACLMessage nuevo = (ACLMessage) msg.clone();
+                nuevo.setLanguage(lenguaje);
+                return nuevo;
+            });
+            copia.addReceiver(new jade.core.AID(participant, jade.core.AID.ISLOCALNAME));
         }
-
-        DefaultInformarFinal informarFinal = new DefaultInformarFinal();
-        informarFinal.setGanador(winner);
-        DefaultLibro libro= new DefaultLibro();
-        libro.setPrecio(subasta.currentPrice);
-        libro.setTitulo(subasta.bookTitle);
-        informarFinal.setLibro(libro);
-        informarFinal.setNumeroRonda(subasta.ronda);
-        Action action = new Action(getAID(), informarFinal);
-        try {
-            getContentManager().fillContent(inform, action);
-        } catch (Codec.CodecException | OntologyException e) {
-            throw new RuntimeException(e);
+        for (ACLMessage copia : porLenguaje.values()) {
+            rellenar.accept(copia);
+            enviar(copia);
         }
-        // Generar un identificador único para el mensaje
-        String uniqueId = "informResult_" + System.currentTimeMillis();
-        inform.setReplyWith(uniqueId);
-
-        send(inform);
-        sendPurchaseConfirmationRequest(subasta,winner);
-        addBehaviour(new AuctionTimeoutBehaviour(this,30000, subasta));
     }
 
-    private class AuctionTimeoutBehaviour extends WakerBehaviour {
-        private final Subasta subasta; // Instancia de la subasta para reiniciar en caso de timeout
-
-        public AuctionTimeoutBehaviour(Agent agent, long timeout, Subasta subasta) {
-            super(agent, timeout);
-            this.subasta = subasta; // Guardar la referencia de la subasta
+    /**
+     * Procesar las respuestas (PROPOSE) de los compradores a un CFP.
+     */
+    private void procesarPropuesta(ACLMessage msg) {
+        if (conversacionLotes().equals(msg.getConversationId())) {
+            procesarLotePropuestas(msg);
+            return;
         }
-
-        @Override
-        protected void onWake() {
-            if (!subasta.compraConfirmada) { // Verifica si la confirmación no fue recibida
-                gui.agregarNotificacion( " No se recibió una confirmación de compra en 20 segundos de "+ subasta.bookTitle +". Reiniciando la subasta...");
-                reiniciarSubasta();
-            }
+        String bookTitle = null;
+        boolean respuesta = false;
+        float precio = 0;
+        Subasta subasta = null;
+        String id=msg.getReplyWith();
+        // Buscar la subasta por la conversación y descartar respuestas a rondas anteriores
+        Subasta conversacion = mapaConversaciones.get(msg.getConversationId());
+        if (conversacion != null && PROTOCOLO_PUJA_AUTOMATICA.equals(msg.getProtocol())) {
+            registrarPujaAutomatica(conversacion, msg);
+            return;
+        }
+        if (conversacion == null || secuenciaDe(msg.getInReplyTo()) != conversacion.secuencia) {
+            propuestasDescartadas++;
+            return;
         }
+        try {
+            // Extraer el contenido del mensaje usando el gestor de contenido
+            Action a = (Action) extraerContenido(msg);
+            DefaultProponer propuesta = (DefaultProponer) a.getAction();
+            Libro libro=propuesta.getLibro();
+            bookTitle=libro.getTitulo();
+            respuesta=propuesta.getRespuesta();
+            precio=libro.getPrecio();
+            // Validar el contenido del mensaje
+            if (!conversacion.bookTitle.equals(bookTitle)) {
+                throw new Exception("El libro no corresponde a la subasta de la conversación.");
+            }
+            subasta = conversacion;
 
-        /**
-         * Lógica para reiniciar la subasta.
-         */
-        private void reiniciarSubasta() {
-            //System.out.println("Reiniciando la subasta para el libro: " + subasta.bookTitle);
-            mapaSubastas.remove(subasta.bookTitle);
-             iniciarSubasta(subasta.bookTitle, subasta.currentPrice, subasta.increment);
+        } catch (Exception e) {
+                ACLMessage reply = msg.createReply();
+                reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+                reply.setContent("No se ha entendido un mensaje inform");
         }
+        // Si la subasta existe, procesar la respuesta
+        if (subasta != null)
+            aplicarPropuesta(subasta, msg.getSender().getLocalName(), respuesta, precio, id);
     }
 
-    private void sendPurchaseConfirmationRequest(Subasta subasta, String winner) {
-        // Crear el AID del comprador a partir del nombre (suponemos que el nombre es único)
-        jade.core.AID buyerAID = new jade.core.AID(winner, jade.core.AID.ISLOCALNAME);
-        // Crear el mensaje de solicitud de compra
-        ACLMessage requestMessage = new ACLMessage(ACLMessage.REQUEST);
-        requestMessage.addReceiver(buyerAID);  // Añadir el comprador como receptor
-        requestMessage.setLanguage(codec.getName());
-        requestMessage.setOntology(ontology.getName());
-        String uniqueId = "requestCompra_" + System.currentTimeMillis();
-        requestMessage.setReplyWith(uniqueId);
+    /**
+     * Contenido de un PROPOSE: el ya decodificado por el pool, si está activo, o se decodifica aquí.
+     */
+    private ContentElement extraerContenido(ACLMessage msg) throws Codec.CodecException, OntologyException {
+        if (decodificador != null)
+            return decodificador.extraer(msg, getContentManager());
+        return getContentManager().extractContent(msg);
+    }
 
-        // Crear la accion de InformarCompra
-        DefaultLibro libro = new DefaultLibro();
-        libro.setTitulo(subasta.bookTitle);
-        libro.setPrecio(subasta.currentPrice);
-        enviarMensajeDeCompra(requestMessage, libro);
+    /**
+     * ContentManager para un hilo del pool de decodificación, con instancias propias de los codecs.
+     */
+    private ContentManager crearGestorContenido() {
+        ContentManager gestor = new ContentManager();
+        gestor.registerLanguage(new SLCodec());
+        gestor.registerLanguage(new LEAPCodec());
+        gestor.registerOntology(ontology);
+        return gestor;
     }
 
-    private void enviarMensajeDeCompra(ACLMessage requestMessage, DefaultLibro libro) {
-        DefaultInformarCompra informarCompra = new DefaultInformarCompra();
-        informarCompra.setLibro(libro);
-        Action action = new Action(getAID(), informarCompra);
+    /**
+     * Procesar un PROPOSE de respuesta a un CFP por lotes: una lista de Proponer, una por
+     * subasta, que se reparten por título. Se descartan las de subastas cuya ronda actual
+     * no salió en el lote al que responde el mensaje.
+     */
+    private void procesarLotePropuestas(ACLMessage msg) {
+        long lote = secuenciaDe(msg.getInReplyTo());
+        String comprador = msg.getSender().getLocalName();
+        ContentElement contenido;
         try {
-            getContentManager().fillContent(requestMessage, action);
+            contenido = extraerContenido(msg);
         } catch (Codec.CodecException | OntologyException e) {
-            throw new RuntimeException(e);
+            contenido = null;
         }
-        send(requestMessage);
-    }
+        if (!(contenido instanceof ContentElementList propuestas)) {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+            enviar(reply);
+            return;
+        }
+        for (int i = 0; i < propuestas.size(); i++) {
+            if (!(propuestas.get(i) instanceof Action a) || !(a.getAction() instanceof DefaultProponer propuesta)) {
+                propuestasDescartadas++;
+                continue;
+            }
+            Libro libro = propuesta.getLibro();
+            Subasta subasta = mapaSubastas.get(libro.getTitulo());
+            if (subasta == null || subasta.loteCfp != lote) {
+                propuestasDescartadas++;
+                continue;
+            }
+            aplicarPropuesta(subasta, comprador, propuesta.getRespuesta(), libro.getPrecio(), msg.getReplyWith());
+        }
+    }
+
+    private void aplicarPropuesta(Subasta subasta, String comprador, boolean respuesta, float precio, String id) {
+        if (subasta.participants.contains(comprador))
+            subasta.respondedores.add(comprador);
+        if (subasta.inicioRonda != 0)
+            latenciaPropuesta.registrar((System.nanoTime() - subasta.inicioRonda) / 1000);
+        subasta.motor.procesarPropuesta(subasta, comprador, respuesta, precio, id);
+        comprobarCierreAnticipado(subasta);
+    }
 
 
     /**
-     * Informar a los participantes del inicio de una subasta.
+     * Anotar una puja en la ronda actual. Devuelve true si es la primera de la ronda.
      */
-    private void informStart(Subasta subasta, String participant) {
+    private boolean anotarPuja(Subasta subasta, String pujador) {
+        subasta.pujas++;
+        subasta.pujadores.add(pujador);
+        subasta.maximos.put(pujador, subasta.currentPrice);
+        if (registro != null)
+            registro.puja(subasta.conversationId, pujador);
+        boolean primera = subasta.lastBidder == null;
+        // Si es la primera vez que alguien puja, actualizamos previousBidder
+        if (primera)
+            subasta.previousBidder = pujador;
+        // Actualizar el último postor
+        subasta.lastBidder = pujador;
+        return primera;
+    }
+
+    /**
+     * Registrar (o retirar, si la respuesta es negativa) el precio máximo de un comprador para
+     * una subasta. El libro del Proponer lleva el precio máximo. Cuando todos los participantes
+     * tienen techo, la ronda en curso se adelanta para resolver la subasta en el siguiente tick.
+     */
+    private void registrarPujaAutomatica(Subasta subasta, ACLMessage msg) {
+        String comprador = msg.getSender().getLocalName();
+        try {
+            Action a = (Action) extraerContenido(msg);
+            DefaultProponer propuesta = (DefaultProponer) a.getAction();
+            if (!subasta.bookTitle.equals(propuesta.getLibro().getTitulo()))
+                throw new Exception("El libro no corresponde a la subasta de la conversación.");
+            if (propuesta.getRespuesta())
+                subasta.techos.put(comprador, propuesta.getLibro().getPrecio());
+            else
+                subasta.techos.remove(comprador);
+        } catch (Exception e) {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+            enviar(reply);
+            return;
+        }
+        if (subasta.entradaRueda != null && subasta.entradaRueda.isProgramada()
+                && subasta.techos.keySet().containsAll(subasta.participants))
+            ruedaSubastas.reprogramar(subasta.entradaRueda, System.currentTimeMillis());
+    }
+
+    /**
+     * Identificador de un mensaje de la subasta: conversación, número de ronda y tipo.
+     */
+    private static String idMensaje(Subasta subasta, String tipo) {
+        return subasta.conversationId + "#" + subasta.secuencia + ":" + tipo;
+    }
+
+    /**
+     * Número de ronda contenido en un identificador generado por idMensaje, o -1 si no lo tiene.
+     */
+    private static long secuenciaDe(String id) {
+        if (id == null)
+            return -1;
+        int almohadilla = id.lastIndexOf('#');
+        int dosPuntos = id.indexOf(':', almohadilla + 1);
+        if (almohadilla < 0 || dosPuntos < 0)
+            return -1;
+        try {
+            return Long.parseLong(id.substring(almohadilla + 1, dosPuntos));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Retirar una subasta terminada de los índices del vendedor.
+     */
+    private void eliminarSubasta(Subasta subasta) {
+        mapaSubastas.remove(subasta.bookTitle);
+        mapaConversaciones.remove(subasta.conversationId);
+    }
+
+    /**
+     * Adelantar el final de la ronda cuando han respondido todos los participantes,
+     * o el quórum configurado más un periodo de gracia. Nunca retrasa el vencimiento.
+     */
+    private void comprobarCierreAnticipado(Subasta subasta) {
+        if (!cierreAnticipado || subasta.participants.isEmpty() || subasta.entradaRueda == null || !subasta.entradaRueda.isProgramada())
+            return;
+        long ahora = System.currentTimeMillis();
+        int respuestas = subasta.respondedores.size();
+        int total = subasta.participants.size();
+        long vencimiento;
+        if (respuestas >= total)
+            vencimiento = ahora;
+        else if (respuestas >= Math.ceil(quorumRespuestas * total))
+            vencimiento = ahora + graciaQuorum;
+        else
+            return;
+        if (vencimiento < subasta.entradaRueda.getVencimiento())
+            ruedaSubastas.reprogramar(subasta.entradaRueda, vencimiento);
+    }
+
+    /**
+     * Informar a los participantes del resultado de una subasta.
+     */
+    private void informResult(Subasta subasta, String winner) {
+
         // Crear un mensaje Inform
         ACLMessage inform = new ACLMessage(ACLMessage.INFORM);
-        inform.setLanguage(codec.getName());
         inform.setOntology(ontology.getName());
-        // Agregar los receptores
-        inform.addReceiver(new jade.core.AID(participant, jade.core.AID.ISLOCALNAME));
+        inform.setConversationId(subasta.conversationId);
+        inform.setReplyWith(idMensaje(subasta, "final"));
+
+        // Enviar a los participantes, codificando una vez por lenguaje
+        enviarAParticipantes(inform, subasta.participants, msg -> rellenarContenido(msg, subasta, "final", () -> {
+            DefaultInformarFinal informarFinal = new DefaultInformarFinal();
+            informarFinal.setGanador(winner);
+            DefaultLibro libro= new DefaultLibro();
+            libro.setPrecio(subasta.currentPrice);
+            libro.setTitulo(subasta.bookTitle);
+            informarFinal.setLibro(libro);
+            informarFinal.setNumeroRonda(subasta.ronda);
+            return informarFinal;
+        }));
+        pedirConfirmacion(subasta);
+    }
 
-        // Crear la accion de InformarNuevaSubasta
+    /**
+     * Pedir la confirmación de compra al candidato actual (subasta.buyer) y esperarla
+     * durante el plazo de confirmación.
+     */
+    private void pedirConfirmacion(Subasta subasta) {
+        subasta.intentoCompra++;
+        sendPurchaseConfirmationRequest(subasta, subasta.buyer);
+        addBehaviour(new AuctionTimeoutBehaviour(this, plazoConfirmacion, subasta));
+    }
+
+    /**
+     * El candidato actual ha rechazado la compra o no la ha confirmado a tiempo: se ofrece
+     * al siguiente suplente que siga en la subasta, y solo si no queda ninguno se reinicia.
+     */
+    private void siguienteCandidato(Subasta subasta) {
+        Deque<Map.Entry<String, Float>> suplentes = subasta.suplentes;
+        while (suplentes != null && !suplentes.isEmpty()) {
+            Map.Entry<String, Float> suplente = suplentes.poll();
+            if (!interesadosPorTitulo.getOrDefault(subasta.bookTitle, Collections.emptySet()).contains(suplente.getKey()))
+                continue;  // Ya no busca el libro
+            subasta.buyer = suplente.getKey();
+            subasta.currentPrice = suplente.getValue();
+            ofertasSuplentes.incrementar();
+            if (registro != null)
+                registro.ganador(subasta.conversationId, subasta.buyer, subasta.currentPrice);
+            gui.actualizarSubastaEnTabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Suplente: " + subasta.buyer, subasta.ronda);
+            gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': se ofrece a " + subasta.buyer + " por " + subasta.currentPrice + ".");
+            pedirConfirmacion(subasta);
+            return;
+        }
+        gui.agregarNotificacion("Subasta '" + subasta.bookTitle + "': no quedan suplentes. Reiniciando la subasta...");
+        reiniciarSubasta(subasta);
+    }
+
+    /**
+     * Volver a subastar el libro desde el principio en una subasta nueva.
+     */
+    private void reiniciarSubasta(Subasta subasta) {
+        eliminarSubasta(subasta);
+        if (registro != null)
+            registro.terminada(subasta.conversationId);
+        // La inglesa se reanuda desde el último precio; las demás vuelven al precio de salida
+        float precio = subasta.motor.getProtocolo() == null ? subasta.currentPrice : subasta.startingPrice;
+        iniciarSubasta(subasta.bookTitle, precio, subasta.increment, subasta.periodo, modalidad(subasta));
+    }
+
+    private class AuctionTimeoutBehaviour extends WakerBehaviour {
+        private final Subasta subasta; // Instancia de la subasta para reiniciar en caso de timeout
+        private final int intento;  // Candidato al que corresponde este plazo
+
+        public AuctionTimeoutBehaviour(Agent agent, long timeout, Subasta subasta) {
+            super(agent, timeout);
+            this.subasta = subasta; // Guardar la referencia de la subasta
+            this.intento = subasta.intentoCompra;
+        }
+
+        @Override
+        protected void onWake() {
+            // Solo si sigue esperando a este candidato (un REFUSE puede haber pasado ya al siguiente)
+            if (!subasta.compraConfirmada && subasta.intentoCompra == intento && mapaConversaciones.get(subasta.conversationId) == subasta) {
+                timeoutsConfirmacion.incrementar();
+                gui.agregarNotificacion("No se recibió a tiempo la confirmación de compra de " + subasta.buyer + " para " + subasta.bookTitle + ".");
+                siguienteCandidato(subasta);
+            }
+        }
+    }
+
+    private void sendPurchaseConfirmationRequest(Subasta subasta, String winner) {
+        // Crear el AID del comprador a partir del nombre (suponemos que el nombre es único)
+        jade.core.AID buyerAID = new jade.core.AID(winner, jade.core.AID.ISLOCALNAME);
+        // Crear el mensaje de solicitud de compra
+        ACLMessage requestMessage = new ACLMessage(ACLMessage.REQUEST);
+        requestMessage.addReceiver(buyerAID);  // Añadir el comprador como receptor
+        requestMessage.setLanguage(lenguajePara(winner));
+        requestMessage.setOntology(ontology.getName());
+        requestMessage.setConversationId(subasta.conversationId);
+        requestMessage.setReplyWith(idMensaje(subasta, "compra"));
+
+        // Crear la accion de InformarCompra
         DefaultLibro libro = new DefaultLibro();
         libro.setTitulo(subasta.bookTitle);
         libro.setPrecio(subasta.currentPrice);
-        DefaultInformarNuevaSubasta informarNuevaSubasta = new DefaultInformarNuevaSubasta();
-        informarNuevaSubasta.setLibro(libro);
-        informarNuevaSubasta.setIncremento(subasta.increment);
+        enviarMensajeDeCompra(requestMessage, libro);
+    }
 
-        Action action = new Action(getAID(), informarNuevaSubasta);
+    private void enviarMensajeDeCompra(ACLMessage requestMessage, DefaultLibro libro) {
+        DefaultInformarCompra informarCompra = new DefaultInformarCompra();
+        informarCompra.setLibro(libro);
+        marcarVendedor(requestMessage);
+        Action action = new Action(getAID(), informarCompra);
         try {
-            getContentManager().fillContent(inform, action);
+            getContentManager().fillContent(requestMessage, action);
         } catch (Codec.CodecException | OntologyException e) {
             throw new RuntimeException(e);
         }
-        // Generar un identificador único para el mensaje
-        String uniqueId = "informNuevaSubasta_" + System.currentTimeMillis();
-        inform.setReplyWith(uniqueId);
-        send(inform);
+        enviar(requestMessage);
+    }
+
+
+    /**
+     * Informar a los participantes del inicio de una subasta.
+     */
+    private void informStart(Subasta subasta, String participant) {
+        // Crear un mensaje Inform
+        ACLMessage inform = new ACLMessage(ACLMessage.INFORM);
+        inform.setLanguage(lenguajePara(participant));
+        inform.setOntology(ontology.getName());
+        // Agregar los receptores
+        inform.addReceiver(new jade.core.AID(participant, jade.core.AID.ISLOCALNAME));
+
+        // Crear la accion de InformarNuevaSubasta (igual para todos los participantes de la ronda)
+        rellenarContenido(inform, subasta, "inicio", () -> {
+            DefaultLibro libro = new DefaultLibro();
+            libro.setTitulo(subasta.bookTitle);
+            libro.setPrecio(subasta.currentPrice);
+            DefaultInformarNuevaSubasta informarNuevaSubasta = new DefaultInformarNuevaSubasta();
+            informarNuevaSubasta.setLibro(libro);
+            informarNuevaSubasta.setIncremento(subasta.increment);
+            return informarNuevaSubasta;
+        });
+        inform.setConversationId(subasta.conversationId);
+        inform.setReplyWith(idMensaje(subasta, "inicio"));
+        marcarVendedor(inform);
+        enviar(inform);
         /*
         ACLMessage inform = new ACLMessage(ACLMessage.INFORM);
         String message = "Subasta iniciada para '" + subasta.bookTitle +
@@ -438,36 +1364,24 @@ public class Vendedor extends Agent {
         inform.setContent(message);
         inform.addReceiver(new jade.core.AID(participant, jade.core.AID.ISLOCALNAME));
 
-        send(inform);*/
+        enviar(inform);*/
     }
 
     private void informRoundResults(Subasta subasta) {
         // Crear el mensaje de información
         ACLMessage inform = new ACLMessage(ACLMessage.INFORM);
-        inform.setLanguage(codec.getName());
         inform.setOntology(ontology.getName());
+        inform.setConversationId(subasta.conversationId);
+        inform.setReplyWith(idMensaje(subasta, "ronda"));
 
-        DefaultInformarRonda informarRonda = getDefaultInformarRonda(subasta);
         // Enviar el mensaje a todos los participantes
-        for (String participant : subasta.participants) {
-            inform.addReceiver(new jade.core.AID(participant, jade.core.AID.ISLOCALNAME));
-        }
-        Action action = new Action(getAID(), informarRonda);
-        try {
-            getContentManager().fillContent(inform, action);
-        } catch (Codec.CodecException | OntologyException e) {
-            throw new RuntimeException(e);
-        }
-        // Generar un identificador único para el mensaje
-        String uniqueId = "informRonda_" + System.currentTimeMillis();
-        inform.setReplyWith(uniqueId);
-
-        send(inform);
+        enviarAParticipantes(inform, subasta.participants,
+                msg -> rellenarContenido(msg, subasta, "ronda", () -> getDefaultInformarRonda(subasta)));
     }
 
     private static DefaultInformarRonda getDefaultInformarRonda(Subasta subasta) {
         DefaultRondaSubasta infoRonda = new DefaultRondaSubasta();
-        infoRonda.setIncremento(subasta.increment);
+        infoRonda.setIncremento(subasta.paso);
         infoRonda.setNumeroRonda(subasta.ronda);
 
         jade.util.leap.List pujadoresLeap = new jade.util.leap.ArrayList();
@@ -487,168 +1401,929 @@ public class Vendedor extends Agent {
 
     private void sendAcceptProposal(Subasta subasta, String bidder, String id) {
         ACLMessage acceptProposal = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
+        acceptProposal.setLanguage(lenguajePara(bidder));
         generarRepuestaAPropuesta(subasta, id, acceptProposal);
-        // Generar un identificador único para el mensaje
-        String uniqueId = "accept_" + System.currentTimeMillis();
-        acceptProposal.setReplyWith(uniqueId);
+        acceptProposal.setReplyWith(idMensaje(subasta, "accept") + "/" + bidder);
         acceptProposal.addReceiver(new jade.core.AID(bidder, jade.core.AID.ISLOCALNAME));
         // Enviar el mensaje de rechazo
-        send(acceptProposal);
+        enviar(acceptProposal);
     }
 
     private void generarRepuestaAPropuesta(Subasta subasta, String id, ACLMessage acceptProposal) {
         acceptProposal.setInReplyTo(id);
-        acceptProposal.setLanguage(codec.getName());
+        acceptProposal.setConversationId(subasta.conversationId);
         acceptProposal.setOntology(ontology.getName());
+        marcarVendedor(acceptProposal);
+
+        // El contenido de ACCEPT y REJECT es el mismo: se codifica una vez por ronda
+        rellenarContenido(acceptProposal, subasta, "respuesta", () -> {
+            DefaultResponderPropuesta responderPropuesta = new DefaultResponderPropuesta();
+            Libro libro = new DefaultLibro();
+            libro.setTitulo(subasta.bookTitle);
+            libro.setPrecio(subasta.currentPrice);
+            responderPropuesta.setLibro(libro);
+            return responderPropuesta;
+        });
+    }
 
-        DefaultResponderPropuesta responderPropuesta = new DefaultResponderPropuesta();
-        Libro libro = new DefaultLibro();
-        libro.setTitulo(subasta.bookTitle);
-        libro.setPrecio(subasta.currentPrice);
-        responderPropuesta.setLibro(libro);
-        Action action = new Action(getAID(), responderPropuesta);
+    /**
+     * Rellenar el contenido de un mensaje reutilizando la codificación ya generada
+     * en esta ronda para el mismo tipo de mensaje y lenguaje. La acción solo se
+     * construye y codifica la primera vez.
+     */
+    private void rellenarContenido(ACLMessage msg, Subasta subasta, String tipo, Supplier<Concept> accion) {
+        String clave = tipo + "|" + msg.getLanguage() + "|" + subasta.ronda + "|" + subasta.currentPrice;
+        Object contenido = subasta.contenidoRonda.get(clave);
+        if (contenido != null) {
+            aciertosCache++;
+            if (contenido instanceof byte[] bytes)
+                msg.setByteSequenceContent(bytes);
+            else
+                msg.setContent((String) contenido);
+            return;
+        }
+        fallosCache++;
+        long inicio = System.nanoTime();
+        Action action = new Action(getAID(), accion.get());
         try {
-            getContentManager().fillContent(acceptProposal, action);
+            getContentManager().fillContent(msg, action);
         } catch (Codec.CodecException | OntologyException e) {
             throw new RuntimeException(e);
         }
+        nanosCodificacion += System.nanoTime() - inicio;
+        subasta.contenidoRonda.put(clave, msg.hasByteSequenceContent() ? msg.getByteSequenceContent() : msg.getContent());
+    }
+
+    /**
+     * Resumen de la caché de contenido: aciertos, fallos y tiempo de codificación ahorrado (estimado).
+     */
+    public String getEstadisticasCache() {
+        double mediaMs = fallosCache == 0 ? 0 : nanosCodificacion / 1e6 / fallosCache;
+        return "Caché de contenido: " + aciertosCache + " aciertos, " + fallosCache + " fallos, "
+                + String.format("%.2f", mediaMs * aciertosCache) + " ms de codificación ahorrados";
     }
 
     private void sendRejectProposal(Subasta subasta, String bidder, String id) {
         ACLMessage rejectProposal = new ACLMessage(ACLMessage.REJECT_PROPOSAL);
+        rejectProposal.setLanguage(lenguajePara(bidder));
         generarRepuestaAPropuesta(subasta, id, rejectProposal);
-        // Generar un identificador único para el mensaje
-        String uniqueId = "reject_" + System.currentTimeMillis();
-        rejectProposal.setReplyWith(uniqueId);
+        rejectProposal.setReplyWith(idMensaje(subasta, "reject") + "/" + bidder);
         rejectProposal.addReceiver(new jade.core.AID(bidder, jade.core.AID.ISLOCALNAME));
         // Enviar el mensaje de rechazo
-        send(rejectProposal);
+        enviar(rejectProposal);
+    }
+
+    /**
+     * Registrar el estado con el que arranca la ronda recién lanzada.
+     */
+    private void registrarRonda(Subasta subasta) {
+        if (registro != null)
+            registro.ronda(subasta.conversationId, subasta.ronda, subasta.secuencia, subasta.currentPrice, subasta.previousBidder);
+    }
+
+    private void registrarGanador(Subasta subasta) {
+        if (subasta.suplentes == null)
+            subasta.suplentes = suplentes(subasta);
+        rondasPorSubasta.registrar(subasta.ronda);
+        if (registro != null)
+            registro.ganador(subasta.conversationId, subasta.buyer, subasta.currentPrice);
+    }
+
+    /**
+     * Suplentes de una subasta inglesa u holandesa: los demás pujadores, del precio más
+     * alto al que llegaron al más bajo (a igualdad, el que pujó antes), cada uno a ese precio.
+     */
+    private static Deque<Map.Entry<String, Float>> suplentes(Subasta subasta) {
+        List<Map.Entry<String, Float>> pujadores = new ArrayList<>(subasta.maximos.size());
+        for (Map.Entry<String, Float> maximo : subasta.maximos.entrySet()) {
+            if (!maximo.getKey().equals(subasta.buyer))
+                pujadores.add(Map.entry(maximo.getKey(), maximo.getValue()));
+        }
+        pujadores.sort(Map.Entry.<String, Float>comparingByValue().reversed());
+        return new ArrayDeque<>(pujadores);
+    }
+
+    /**
+     * Abrir el registro persistente y reconstruir las subastas que seguían vivas.
+     * Las rondas se reanudan con un periodo completo; las subastas con ganador
+     * pendiente vuelven a pedir la confirmación de compra, sin suplentes. El paso adaptativo no se
+     * guarda: las subastas recuperadas vuelven a subir con el incremento configurado.
+     */
+    private void recuperarSubastas(String directorio) {
+        try {
+            registro = new RegistroSubastas(Paths.get(directorio), TAMANO_REGISTRO);
+            for (RegistroSubastas.Estado estado : registro.recuperar()) {
+                Subasta subasta = new Subasta(estado.conversationId, estado.titulo, estado.precioInicial, estado.incremento, estado.periodo,
+                        motores.getOrDefault(estado.modalidad != null ? estado.modalidad : SUBASTA_INGLESA, motores.get(SUBASTA_INGLESA)));
+                subasta.ronda = estado.ronda;
+                subasta.secuencia = estado.secuencia;
+                subasta.currentPrice = estado.precioActual;
+                subasta.previousBidder = estado.postorAnterior;
+                subasta.lastBidder = estado.ultimoPostor;
+                subasta.pujadores.addAll(estado.pujadores);
+                subasta.pujas = estado.pujadores.size();
+                subasta.buyer = estado.comprador;
+                mapaSubastas.put(subasta.bookTitle, subasta);
+                mapaConversaciones.put(subasta.conversationId, subasta);
+                // Evitar repetir conversation-id con las subastas recuperadas
+                String numero = subasta.conversationId.substring(subasta.conversationId.lastIndexOf('-') + 1);
+                try {
+                    contadorSubastas = Math.max(contadorSubastas, Long.parseLong(numero));
+                } catch (NumberFormatException e) {
+                    // Identificador con otro formato: no afecta al contador
+                }
+                gui.agregarSubastaATabla(subasta.bookTitle, subasta.currentPrice, subasta.increment, "Recuperada", subasta.ronda);
+                if (subasta.buyer != null) {
+                    pedirConfirmacion(subasta);
+                } else {
+                    subasta.entradaRueda = ruedaSubastas.programar(subasta, System.currentTimeMillis() + subasta.periodo);
+                }
+            }
+            gui.agregarNotificacion("Persistencia activada en '" + directorio + "': " + mapaSubastas.size() + " subastas recuperadas.");
+        } catch (IOException e) {
+            e.printStackTrace();
+            registro = null;
+            gui.agregarNotificacion("No se pudo abrir el registro de subastas en '" + directorio + "'. Se continúa sin persistencia.");
+        }
+    }
+
+    /**
+     * Guardar una instantánea de las subastas vivas y compactar el registro.
+     */
+    private void guardarInstantanea() {
+        List<RegistroSubastas.Estado> vivas = new ArrayList<>(mapaConversaciones.size());
+        for (Subasta subasta : mapaConversaciones.values()) {
+            RegistroSubastas.Estado estado = new RegistroSubastas.Estado();
+            estado.conversationId = subasta.conversationId;
+            estado.titulo = subasta.bookTitle;
+            estado.precioInicial = subasta.startingPrice;
+            estado.incremento = subasta.increment;
+            estado.periodo = subasta.periodo;
+            estado.ronda = subasta.ronda;
+            estado.secuencia = subasta.secuencia;
+            estado.precioActual = subasta.currentPrice;
+            estado.postorAnterior = subasta.previousBidder;
+            estado.ultimoPostor = subasta.lastBidder;
+            estado.pujadores.addAll(subasta.pujadores);
+            estado.comprador = subasta.buyer;
+            estado.modalidad = subasta.motor.getProtocolo();
+            vivas.add(estado);
+        }
+        try {
+            registro.instantanea(vivas);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     public void iniciarSubasta(String titulo, float precioInicial, float incremento) {
+        iniciarSubasta(titulo, precioInicial, incremento, periodoRonda, modalidadPorDefecto);
+    }
+
+    public void iniciarSubasta(String titulo, float precioInicial, float incremento, String modalidad) {
+        iniciarSubasta(titulo, precioInicial, incremento, periodoRonda, modalidad);
+    }
+
+    public void iniciarSubasta(String titulo, float precioInicial, float incremento, long periodo) {
+        iniciarSubasta(titulo, precioInicial, incremento, periodo, modalidadPorDefecto);
+    }
+
+    /**
+     * Pedir una subasta desde fuera del hilo del agente (la interfaz gráfica): se inicia en
+     * un comportamiento, igual que importarCatalogo, porque la rueda, los mapas de subastas
+     * y el registro solo se modifican desde el hilo del agente.
+     */
+    public void solicitarSubasta(String titulo, float precioInicial, float incremento, String modalidad) {
+        addBehaviour(new OneShotBehaviour(this) {
+            @Override
+            public void action() {
+                iniciarSubasta(titulo, precioInicial, incremento, modalidad);
+            }
+        });
+    }
+
+    /**
+     * Iniciar una subasta con la modalidad indicada (SUBASTA_INGLESA, SUBASTA_SOBRE_CERRADO
+     * o SUBASTA_HOLANDESA). En la holandesa el incremento es lo que baja el precio por ronda.
+     * Solo desde el hilo del agente; desde otros hilos, solicitarSubasta o una Orden.
+     */
+    public void iniciarSubasta(String titulo, float precioInicial, float incremento, long periodo, String modalidad) {
+        if (modalidad == null)
+            modalidad = SUBASTA_INGLESA;
+        if (!motores.containsKey(modalidad)) {
+            gui.agregarNotificacion("Modalidad de subasta desconocida: '" + modalidad + "'.");
+            return;
+        }
+        if (anilloFragmentos != null) {
+            // El coordinador no lleva subastas: las asigna al fragmento dueño del título
+            if (fragmentoPorTitulo.containsKey(titulo) || subastasPendientes.containsKey(titulo)) {
+                gui.agregarNotificacion("Ya existe una subasta para el libro '" + titulo + "'.");
+            } else {
+                asignarSubasta(titulo, precioInicial, incremento, modalidad);
+            }
+            return;
+        }
         if (!mapaSubastas.containsKey(titulo)) {
-            Subasta subasta = new Subasta(titulo, precioInicial, incremento);
-            mapaSubastas.put(titulo, subasta);
-            addBehaviour(new AuctionBehaviour(this, subasta, 10000)); // Intervalo de 10 segundos entre rondas
-            gui.agregarNotificacion("Subasta iniciada para '" + titulo + "' con precio inicial " + precioInicial + " y incremento " + incremento + ".");
+            crearSubasta(titulo, precioInicial, incremento, periodo, modalidad);
+            gui.agregarNotificacion("Subasta " + modalidad + " iniciada para '" + titulo + "' con precio inicial " + precioInicial + " y incremento " + incremento + ".");
         } else {
             gui.agregarNotificacion("Ya existe una subasta para el libro '" + titulo + "'.");
         }
     }
 
-    private class ReceiveBuyerResponseBehaviour extends CyclicBehaviour {
-        @Override
-        public void action() {
-            Subasta subasta;
-            float precio;
-            int telefono;
-            String booktitle;
-            // Plantilla para recibir AGREE
-            MessageTemplate agreeTemplate = MessageTemplate.MatchPerformative(ACLMessage.AGREE);
-            ACLMessage msg = receive(agreeTemplate);
-
-            if (msg != null) {
-                //System.out.println(("agree recibido"));
-                String buyerName = msg.getSender().getLocalName();
-                try {
-                    // Extraer el contenido del mensaje utilizando el ContentManager
-                    Action action = (Action)  getContentManager().extractContent(msg);
-                    DefaultMandarDatosCompra  infoCompra= (DefaultMandarDatosCompra) action.getAction();
-                    booktitle= infoCompra.getLibro().getTitulo();
-                    precio=infoCompra.getLibro().getPrecio();
-                    telefono= infoCompra.getTelefono();
-                    subasta = mapaSubastas.get(booktitle);
-                    if((booktitle==null)||(subasta==null))
-                        throw new Exception();
-                } catch (Exception e) {
-                  //  System.out.println("excep");
-                    ACLMessage reply = msg.createReply();
-                    reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
-                    send(reply);
+    private void crearSubasta(String titulo, float precioInicial, float incremento, long periodo, String modalidad) {
+        String conversationId = "subasta-" + getLocalName() + "-" + (++contadorSubastas);
+        Subasta subasta = new Subasta(conversationId, titulo, precioInicial, incremento, periodo, motores.get(modalidad));
+        mapaSubastas.put(titulo, subasta);
+        mapaConversaciones.put(conversationId, subasta);
+        // La primera ronda se lanza al cumplirse el primer periodo
+        subasta.entradaRueda = ruedaSubastas.programar(subasta, System.currentTimeMillis() + periodo);
+        if (registro != null) {
+            registro.inicio(conversationId, titulo, precioInicial, incremento, periodo);
+            if (subasta.motor.getProtocolo() != null)
+                registro.modalidad(conversationId, modalidad);
+        }
+    }
+
+    private static String modalidad(Subasta subasta) {
+        String protocolo = subasta.motor.getProtocolo();
+        return protocolo != null ? protocolo : SUBASTA_INGLESA;
+    }
+
+    /**
+     * Retirar una subasta en curso sin ganador. Si ya tiene un ganador pendiente de confirmar
+     * se deja terminar. Devuelve true si se ha retirado.
+     */
+    private boolean retirarSubasta(String titulo) {
+        Subasta subasta = mapaSubastas.get(titulo);
+        if (subasta == null || subasta.buyer != null)
+            return false;
+        if (subasta.entradaRueda != null)
+            ruedaSubastas.cancelar(subasta.entradaRueda);
+        eliminarSubasta(subasta);
+        if (registro != null)
+            registro.terminada(subasta.conversationId);
+        gui.subastaRetirada(titulo);
+        return true;
+    }
+
+    /**
+     * Procesar la confirmación de compra (AGREE) del ganador.
+     */
+    private void procesarConfirmacionCompra(ACLMessage msg) {
+        Subasta subasta;
+        float precio;
+        int telefono;
+        String booktitle;
+        String buyerName = msg.getSender().getLocalName();
+        try {
+            // Extraer el contenido del mensaje utilizando el ContentManager
+            Action action = (Action)  getContentManager().extractContent(msg);
+            DefaultMandarDatosCompra  infoCompra= (DefaultMandarDatosCompra) action.getAction();
+            booktitle= infoCompra.getLibro().getTitulo();
+            precio=infoCompra.getLibro().getPrecio();
+            telefono= infoCompra.getTelefono();
+            subasta = mapaConversaciones.get(msg.getConversationId());
+            if (subasta == null)
+                subasta = mapaSubastas.get(booktitle);
+            if((booktitle==null)||(subasta==null)||!subasta.bookTitle.equals(booktitle))
+                throw new Exception();
+        } catch (Exception e) {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+            enviar(reply);
+            return;
+        }
+        if (!buyerName.equals(subasta.buyer)) {
+            return;  // Candidato anterior que confirma tarde, o subasta sin ganador
+        } else if (Math.abs(precio - subasta.currentPrice) > 1.e-6) {
+            System.out.println(precio);
+            System.out.println(subasta.currentPrice);
+            sendPurchaseConfirmationRequest(subasta, buyerName);
+        } else {
+            // Registrar la venta en el sistema
+            subasta.compraConfirmada = true;
+            eliminarSubasta(subasta);
+            if (registro != null)
+                registro.terminada(subasta.conversationId);
+            gui.notificarLibroVendido(booktitle, buyerName, precio, String.valueOf(telefono));
+            gui.agregarNotificacion("Venta registrada. Libro: " + booktitle +
+                    ", codigo.Comprador: " + buyerName + ", Precio: " + precio +
+                    ", Teléfono: " + telefono);
+
+            //Enviar mensaje inform de que se ha confirmado la compra
+            ACLMessage inform = new ACLMessage(ACLMessage.INFORM);
+            inform.setLanguage(lenguajePara(buyerName));
+            inform.setOntology(ontology.getName());
+            inform.addReceiver(new jade.core.AID(buyerName, jade.core.AID.ISLOCALNAME));
+            inform.setConversationId(subasta.conversationId);
+            inform.setReplyWith(idMensaje(subasta, "informCompra"));
+
+            // Crear la accion de InformarCompra
+            DefaultLibro libro = new DefaultLibro();
+            libro.setTitulo(booktitle);
+            libro.setPrecio(precio);
+            enviarMensajeDeCompra(inform, libro);
+        }
+    }
+
+    /**
+     * Identificador de la conversación entre un coordinador y sus fragmentos.
+     */
+    private static String conversacionFragmentos(String coordinador) {
+        return "fragmentos-" + coordinador;
+    }
+
+    /**
+     * Mensaje de control entre coordinador y fragmento. El tipo va en el parámetro "evento".
+     */
+    private ACLMessage mensajeFragmentos(int performativa, String destino, String evento) {
+        ACLMessage msg = new ACLMessage(performativa);
+        msg.addReceiver(new jade.core.AID(destino, jade.core.AID.ISLOCALNAME));
+        msg.setConversationId(conversacionFragmentos(coordinador != null ? coordinador : getLocalName()));
+        msg.addUserDefinedParameter(PARAMETRO_EVENTO, evento);
+        return msg;
+    }
+
+    /**
+     * Enviar un mensaje de control con una subasta (título, precio e incremento) como contenido.
+     * La modalidad va en el parámetro "modalidad".
+     */
+    private void enviarNuevaSubasta(ACLMessage msg, String titulo, float precio, float incremento, String modalidad) {
+        msg.addUserDefinedParameter(PARAMETRO_MODALIDAD, modalidad);
+        msg.setLanguage(codec.getName());
+        msg.setOntology(ontology.getName());
+        DefaultLibro libro = new DefaultLibro();
+        libro.setTitulo(titulo);
+        libro.setPrecio(precio);
+        DefaultInformarNuevaSubasta nuevaSubasta = new DefaultInformarNuevaSubasta();
+        nuevaSubasta.setLibro(libro);
+        nuevaSubasta.setIncremento(incremento);
+        try {
+            getContentManager().fillContent(msg, new Action(getAID(), nuevaSubasta));
+        } catch (Codec.CodecException | OntologyException e) {
+            throw new RuntimeException(e);
+        }
+        enviar(msg);
+    }
+
+    private static String modalidadMensaje(ACLMessage msg) {
+        String modalidad = msg.getUserDefinedParameter(PARAMETRO_MODALIDAD);
+        return modalidad != null ? modalidad : SUBASTA_INGLESA;
+    }
+
+    private DefaultInformarNuevaSubasta extraerNuevaSubasta(ACLMessage msg) throws Exception {
+        Action action = (Action) getContentManager().extractContent(msg);
+        return (DefaultInformarNuevaSubasta) action.getAction();
+    }
+
+    /**
+     * En un fragmento, identificar al coordinador como vendedor ante los compradores.
+     */
+    private void marcarVendedor(ACLMessage msg) {
+        if (coordinador != null)
+            msg.addUserDefinedParameter(PARAMETRO_VENDEDOR, coordinador);
+    }
+
+    /**
+     * Cambiar el número de fragmentos activos. Los nuevos se crean en este contenedor (o en uno
+     * propio cada uno) y los sobrantes salen del anillo; solo migran las subastas cuyo dueño cambia.
+     */
+    public void cambiarFragmentos(int numero) {
+        addBehaviour(new OneShotBehaviour(this) {
+            @Override
+            public void action() {
+                ajustarFragmentos(numero);
+            }
+        });
+    }
+
+    private void ajustarFragmentos(int numero) {
+        int activos = fragmentosPropios.size() - fragmentosRetirados.size();
+        while (activos < numero) {
+            if (crearFragmento())
+                activos++;
+            else
+                break;
+        }
+        // Retirar primero los últimos fragmentos creados
+        for (int i = fragmentosPropios.size() - 1; i >= 0 && activos > numero; i--) {
+            String fragmento = fragmentosPropios.get(i);
+            if (fragmentosRetirados.add(fragmento)) {
+                anilloFragmentos.quitar(fragmento);
+                activos--;
+            }
+        }
+        rebalancear();
+        for (String fragmento : new ArrayList<>(fragmentosRetirados))
+            comprobarRetirada(fragmento);
+    }
+
+    private boolean crearFragmento() {
+        String nombre = getLocalName() + "-f" + (siguienteFragmento++);
+        List<Object> argumentos = new ArrayList<>();
+        String persistencia = null;
+        if (getArguments() != null) {
+            for (Object arg : getArguments()) {
+                if (!(arg instanceof String))
+                    continue;  // Los observadores son del coordinador
+                String texto = ((String) arg).trim();
+                if (texto.startsWith("persistencia="))
+                    persistencia = texto.substring("persistencia=".length());
+                else if (!texto.startsWith("fragmentos=") && !texto.startsWith("contenedorPorFragmento"))
+                    argumentos.add(texto);
+            }
+        }
+        argumentos.add("fragmento=" + getLocalName());
+        if (persistencia != null)
+            argumentos.add("persistencia=" + Paths.get(persistencia, nombre));
+        try {
+            jade.wrapper.AgentContainer contenedor = getContainerController();
+            if (contenedorPorFragmento) {
+                // Contenedor propio en esta JVM, conectado al contenedor principal por defecto
+                Profile perfil = new ProfileImpl();
+                perfil.setParameter(Profile.CONTAINER_NAME, nombre + "-contenedor");
+                contenedor = jade.core.Runtime.instance().createAgentContainer(perfil);
+            }
+            AgentController agente = contenedor.createNewAgent(nombre, Vendedor.class.getName(), argumentos.toArray());
+            agente.start();
+            fragmentosPropios.add(nombre);
+            return true;
+        } catch (StaleProxyException e) {
+            e.printStackTrace();
+            gui.agregarNotificacion("No se pudo crear el fragmento " + nombre + ".");
+            return false;
+        }
+    }
+
+    /**
+     * Enviar una subasta al fragmento dueño de su título, o dejarla pendiente si aún no hay ninguno.
+     */
+    private void asignarSubasta(String titulo, float precio, float incremento, String modalidad) {
+        String fragmento = anilloFragmentos.nodoPara(titulo);
+        if (fragmento == null) {
+            subastasPendientes.put(titulo, new float[]{precio, incremento});
+            if (!SUBASTA_INGLESA.equals(modalidad))
+                modalidadesPendientes.put(titulo, modalidad);
+            gui.agregarNotificacion("Subasta para '" + titulo + "' pendiente de un fragmento disponible.");
+            return;
+        }
+        fragmentoPorTitulo.put(titulo, fragmento);
+        enviarNuevaSubasta(mensajeFragmentos(ACLMessage.REQUEST, fragmento, "iniciar"), titulo, precio, incremento, modalidad);
+        gui.agregarNotificacion("Subasta para '" + titulo + "' asignada a " + fragmento + ".");
+    }
+
+    /**
+     * Asignar las subastas pendientes y pedir la cesión de las que han cambiado de dueño en el anillo.
+     */
+    private void rebalancear() {
+        if (anilloFragmentos.size() == 0)
+            return;
+        Map<String, float[]> pendientes = new LinkedHashMap<>(subastasPendientes);
+        subastasPendientes.clear();
+        for (Map.Entry<String, float[]> entrada : pendientes.entrySet()) {
+            String modalidad = modalidadesPendientes.remove(entrada.getKey());
+            asignarSubasta(entrada.getKey(), entrada.getValue()[0], entrada.getValue()[1], modalidad != null ? modalidad : SUBASTA_INGLESA);
+        }
+        for (Map.Entry<String, String> entrada : fragmentoPorTitulo.entrySet())
+            migrarSiProcede(entrada.getKey());
+    }
+
+    private void migrarSiProcede(String titulo) {
+        String actual = fragmentoPorTitulo.get(titulo);
+        String dueno = anilloFragmentos.nodoPara(titulo);
+        if (actual == null || dueno == null || dueno.equals(actual) || !migrando.add(titulo))
+            return;
+        ACLMessage cancel = mensajeFragmentos(ACLMessage.CANCEL, actual, "migrar");
+        cancel.setContent(titulo);
+        enviar(cancel);
+    }
+
+    /**
+     * Pedir la salida de un fragmento retirado en cuanto ya no tiene subastas.
+     */
+    private void comprobarRetirada(String fragmento) {
+        if (fragmentosRetirados.contains(fragmento) && !fragmentoPorTitulo.containsValue(fragmento))
+            enviar(mensajeFragmentos(ACLMessage.REQUEST, fragmento, "salir"));
+    }
+
+    /**
+     * Coordinador: procesar los mensajes de los fragmentos (altas, bajas, eventos de la
+     * interfaz y respuestas a las cesiones de subastas).
+     */
+    private void procesarMensajeFragmento(ACLMessage msg) {
+        String fragmento = msg.getSender().getLocalName();
+        String evento = msg.getUserDefinedParameter(PARAMETRO_EVENTO);
+        if (evento == null)
+            return;
+        switch (evento) {
+            case "alta" -> {
+                if (fragmentosRetirados.contains(fragmento)) {
+                    comprobarRetirada(fragmento);
                     return;
                 }
-                 if (!subasta.buyer.equals(buyerName)) {
-                    // System.out.println("PRoblem");
-                        return;
-                 } else if (Math.abs(precio - subasta.currentPrice) > 1.e-6) {
-                     System.out.println(precio);
-                     System.out.println(subasta.currentPrice);
-                        sendPurchaseConfirmationRequest(subasta, buyerName);
+                anilloFragmentos.agregar(fragmento);
+                gui.agregarNotificacion("Fragmento " + fragmento + " disponible (" + anilloFragmentos.size() + " en total).");
+                rebalancear();
+            }
+            case "baja" -> {
+                anilloFragmentos.quitar(fragmento);
+                fragmentosRetirados.remove(fragmento);
+                fragmentosPropios.remove(fragmento);
+                List<String> perdidas = new ArrayList<>();
+                for (Map.Entry<String, String> entrada : fragmentoPorTitulo.entrySet()) {
+                    if (entrada.getValue().equals(fragmento))
+                        perdidas.add(entrada.getKey());
+                }
+                for (String titulo : perdidas) {
+                    fragmentoPorTitulo.remove(titulo);
+                    migrando.remove(titulo);
+                }
+                gui.agregarNotificacion("Fragmento " + fragmento + " finalizado."
+                        + (perdidas.isEmpty() ? "" : " Subastas perdidas: " + String.join(", ", perdidas)));
+            }
+            case "notificacion" -> gui.agregarNotificacion("[" + fragmento + "] " + msg.getContent());
+            case "nuevaFila", "fila" -> {
+                String[] campos = msg.getContent().split("\t", -1);
+                float precio = Float.parseFloat(campos[1]);
+                float incremento = Float.parseFloat(campos[2]);
+                int ronda = Integer.parseInt(campos[4]);
+                if (evento.equals("nuevaFila")) {
+                    // Subasta recuperada por el fragmento tras un reinicio
+                    fragmentoPorTitulo.put(campos[0], fragmento);
+                    gui.agregarSubastaATabla(campos[0], precio, incremento, campos[3], ronda);
                 } else {
-                        // Registrar la venta en el sistema
-                        subasta.compraConfirmada = true;
-                        mapaSubastas.remove(booktitle);
-                        gui.notificarLibroVendido(booktitle, buyerName, precio, String.valueOf(telefono));
-                        gui.agregarNotificacion("Venta registrada. Libro: " + booktitle +
-                                ", codigo.Comprador: " + buyerName + ", Precio: " + precio +
-                                    ", Teléfono: " + telefono);
-
-                            //Enviar mensaje inform de que se ha confirmado la compra
-                            ACLMessage inform = new ACLMessage(ACLMessage.INFORM);
-                            inform.setLanguage(codec.getName());
-                            inform.setOntology(ontology.getName());
-                            inform.addReceiver(new jade.core.AID(buyerName, jade.core.AID.ISLOCALNAME));
-                            String uniqueId = "informCompra_" + System.currentTimeMillis();
-                            inform.setReplyWith(uniqueId);
-
-                            // Crear la accion de InformarCompra
-                            DefaultLibro libro = new DefaultLibro();
-                            libro.setTitulo(booktitle);
-                            libro.setPrecio(precio);
-                            enviarMensajeDeCompra(inform, libro);
+                    gui.actualizarSubastaEnTabla(campos[0], precio, incremento, campos[3], ronda);
+                }
+            }
+            case "vendido" -> {
+                String[] campos = msg.getContent().split("\t", -1);
+                fragmentoPorTitulo.remove(campos[0]);
+                gui.notificarLibroVendido(campos[0], campos[1], Float.parseFloat(campos[2]), campos[3]);
+                comprobarRetirada(fragmento);
+            }
+            case "migrada" -> {
+                try {
+                    DefaultInformarNuevaSubasta nuevaSubasta = extraerNuevaSubasta(msg);
+                    String titulo = nuevaSubasta.getLibro().getTitulo();
+                    migrando.remove(titulo);
+                    fragmentoPorTitulo.remove(titulo);
+                    asignarSubasta(titulo, nuevaSubasta.getLibro().getPrecio(), nuevaSubasta.getIncremento(), modalidadMensaje(msg));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                comprobarRetirada(fragmento);
+            }
+            case "retirada" -> {
+                fragmentoPorTitulo.remove(msg.getContent());
+                migrando.remove(msg.getContent());
+                gui.subastaRetirada(msg.getContent());
+                comprobarRetirada(fragmento);
+            }
+            case "terminada" -> {
+                migrando.remove(msg.getContent());
+                fragmentoPorTitulo.remove(msg.getContent());
+                comprobarRetirada(fragmento);
+            }
+            case "ocupada" -> {
+                // Hay pujas o un ganador pendiente de confirmar: se vuelve a intentar más tarde
+                String titulo = msg.getContent();
+                migrando.remove(titulo);
+                addBehaviour(new WakerBehaviour(this, REINTENTO_MIGRACION) {
+                    @Override
+                    protected void onWake() {
+                        migrarSiProcede(titulo);
                     }
-                 block();
-            } else {
-                block();
+                });
             }
+            default -> System.out.println(getLocalName() + ": evento de fragmento desconocido: " + evento);
+        }
+    }
 
+    /**
+     * Fragmento: procesar las órdenes del coordinador.
+     */
+    private void procesarMensajeCoordinador(ACLMessage msg) {
+        String evento = msg.getUserDefinedParameter(PARAMETRO_EVENTO);
+        if ("iniciar".equals(evento)) {
+            try {
+                DefaultInformarNuevaSubasta nuevaSubasta = extraerNuevaSubasta(msg);
+                iniciarSubasta(nuevaSubasta.getLibro().getTitulo(), nuevaSubasta.getLibro().getPrecio(), nuevaSubasta.getIncremento(),
+                        modalidadMensaje(msg));
+            } catch (Exception e) {
+                ACLMessage reply = msg.createReply();
+                reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+                enviar(reply);
+            }
+        } else if ("migrar".equals(evento)) {
+            cederSubasta(msg.getContent());
+        } else if ("retirar".equals(evento)) {
+            retirarSubasta(msg.getContent());
+        } else if ("salir".equals(evento)) {
+            doDelete();
         }
     }
 
-    protected void notificarSalida(){
-        this.doDelete();
+    /**
+     * Fragmento: entregar una subasta al coordinador para que la reasigne. Solo se ceden
+     * subastas sin pujas: el nuevo fragmento la empieza desde el precio de salida en otra
+     * conversación, así que con pujas o un ganador pendiente se perdería la posición de los
+     * postores. En ese caso se rechaza y el coordinador lo vuelve a intentar más tarde.
+     */
+    private void cederSubasta(String titulo) {
+        Subasta subasta = mapaSubastas.get(titulo);
+        if (subasta == null) {
+            ACLMessage inform = mensajeFragmentos(ACLMessage.INFORM, coordinador, "terminada");
+            inform.setContent(titulo);
+            enviar(inform);
+            return;
+        }
+        if (subasta.buyer != null || !subasta.maximos.isEmpty() || !subasta.techos.isEmpty()
+                || !subasta.pujadores.isEmpty() || subasta.previousBidder != null) {
+            ACLMessage refuse = mensajeFragmentos(ACLMessage.REFUSE, coordinador, "ocupada");
+            refuse.setContent(titulo);
+            enviar(refuse);
+            return;
+        }
+        if (subasta.entradaRueda != null)
+            ruedaSubastas.cancelar(subasta.entradaRueda);
+        avisarTraslado(subasta);
+        eliminarSubasta(subasta);
+        if (registro != null)
+            registro.terminada(subasta.conversationId);
+        gui.agregarNotificacion("Subasta '" + titulo + "' cedida a otro fragmento en la ronda " + subasta.ronda + ".");
+        // Sin pujas no hay nada que conservar: el nuevo fragmento parte del precio de salida
+        enviarNuevaSubasta(mensajeFragmentos(ACLMessage.INFORM, coordinador, "migrada"), titulo, subasta.startingPrice, subasta.increment, modalidad(subasta));
     }
 
-    private class ReceiveNotUnderstoodBehaviour extends CyclicBehaviour {
+    /**
+     * Avisar a los participantes de que la conversación de la subasta termina porque pasa a
+     * otro fragmento. El nuevo fragmento les enviará el inicio en su propia conversación.
+     */
+    private void avisarTraslado(Subasta subasta) {
+        if (subasta.participants.isEmpty())
+            return;
+        ACLMessage inform = new ACLMessage(ACLMessage.INFORM);
+        inform.setProtocol(PROTOCOLO_TRASLADO);
+        inform.setConversationId(subasta.conversationId);
+        inform.setReplyWith(idMensaje(subasta, "traslado"));
+        inform.setContent(subasta.bookTitle);
+        marcarVendedor(inform);
+        for (String participante : subasta.participants)
+            inform.addReceiver(new jade.core.AID(participante, jade.core.AID.ISLOCALNAME));
+        enviar(inform);
+    }
 
+    /**
+     * Observador de un fragmento: reenvía al coordinador los eventos de la interfaz
+     * como texto con los campos separados por tabuladores.
+     */
+    private class ObservadorCoordinador implements ObservadorVendedor {
         @Override
-        public void action() {
-            MessageTemplate template = MessageTemplate.MatchPerformative(ACLMessage.NOT_UNDERSTOOD);
-            ACLMessage msg = receive(template);
+        public void agregarNotificacion(String mensaje) {
+            reenviar("notificacion", mensaje);
+        }
 
-            if (msg != null) {
-                String sender = msg.getSender().getLocalName();
-                gui.agregarNotificacion("Recibido NOT_UNDERSTOOD de: " + sender);
-            } else {
-                block();
-            }
+        @Override
+        public void agregarSubastaATabla(String titulo, float precioActual, float incremento, String pujadores, int ronda) {
+            reenviar("nuevaFila", titulo, String.valueOf(precioActual), String.valueOf(incremento), pujadores, String.valueOf(ronda));
+        }
+
+        @Override
+        public void actualizarSubastaEnTabla(String titulo, float precioActual, float incremento, String pujadores, int ronda) {
+            reenviar("fila", titulo, String.valueOf(precioActual), String.valueOf(incremento), pujadores, String.valueOf(ronda));
+        }
+
+        @Override
+        public void notificarLibroVendido(String titulo, String comprador, float precioFinal, String telefono) {
+            reenviar("vendido", titulo, comprador, String.valueOf(precioFinal), telefono);
+        }
+
+        @Override
+        public void subastaRetirada(String titulo) {
+            reenviar("retirada", titulo);
+        }
+
+        private void reenviar(String evento, String... campos) {
+            ACLMessage msg = mensajeFragmentos(ACLMessage.INFORM, coordinador, evento);
+            msg.setContent(String.join("\t", campos));
+            enviar(msg);
         }
     }
 
-    private class ReceiveRefuseBehaviour extends CyclicBehaviour {
+    /**
+     * Orden para controlar el vendedor desde código externo a la plataforma: se entrega con
+     * AgentController.putO2AObject y se ejecuta en el hilo del agente.
+     */
+    public interface Orden {
+        void ejecutar(Vendedor vendedor);
+    }
+
+    private class ProcesarOrdenesBehaviour extends CyclicBehaviour {
         @Override
         public void action() {
-            // Plantilla para filtrar mensajes de tipo REFUSE
-            MessageTemplate template = MessageTemplate.MatchPerformative(ACLMessage.REFUSE);
-            ACLMessage msg = receive(template); // Recibir mensaje que coincida con la plantilla
+            Object objeto = getO2AObject();
+            if (objeto == null) {
+                block();
+                return;
+            }
+            if (objeto instanceof Orden orden)
+                orden.ejecutar(Vendedor.this);
+            else
+                System.out.println(getLocalName() + ": objeto O2A no reconocido: " + objeto);
+        }
+    }
 
-            if (msg != null) {
-                try {
-                    // Extraer el contenido del mensaje utilizando el ContentManager
-                    Action action = (Action)  getContentManager().extractContent(msg);
-                    DefaultInformarCompra  infoCompra= (DefaultInformarCompra) action.getAction();
-                    String booktitle= infoCompra.getLibro().getTitulo();
-                    String senderName = msg.getSender().getLocalName(); // Obtiene el nombre local (sin el sufijo del contenedor)
-                    gui.agregarNotificacion("El comprador "+senderName+ " ha rechazado la compra de "+booktitle+". Se reiniciará la subasta si no la acepta...");
-                } catch (Exception e) {
-                    ACLMessage reply = msg.createReply();
-                    reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
-                    send(reply);
+    /**
+     * Importar un catálogo CSV con una subasta por fila: "título,precio inicial,incremento".
+     * Si el fichero ya se importó antes, solo se aplican las diferencias: se inician las
+     * subastas nuevas, se actualizan precio inicial e incremento de las que han cambiado
+     * y se retiran las que ya no aparecen.
+     */
+    public void importarCatalogo(Path fichero) {
+        addBehaviour(new OneShotBehaviour(this) {
+            @Override
+            public void action() {
+                Map<String, ImportadorCsv.Fila> estado = importaciones.computeIfAbsent(fichero.toAbsolutePath().normalize(), f -> new HashMap<>());
+                addBehaviour(new ImportadorCsv(Vendedor.this, fichero, true, estado, new ImportacionCatalogo()));
+            }
+        });
+    }
+
+    private class ImportacionCatalogo implements ImportadorCsv.Destino {
+        private int omitidas = 0;  // Cambios o bajas que no se han podido aplicar
+
+        @Override
+        public void lote(List<ImportadorCsv.Fila> altas, List<ImportadorCsv.Fila> cambios, List<String> bajas) {
+            for (ImportadorCsv.Fila fila : altas)
+                alta(fila);
+            for (ImportadorCsv.Fila fila : cambios) {
+                Subasta subasta = mapaSubastas.get(fila.titulo);
+                float[] pendiente = subastasPendientes.get(fila.titulo);
+                if (subasta != null) {
+                    // Se aplica en la próxima ronda o reinicio; el registro lo recoge en la siguiente instantánea
+                    subasta.startingPrice = fila.precio;
+                    subasta.increment = fila.incremento;
+                    gui.actualizarSubastaEnTabla(fila.titulo, subasta.currentPrice, subasta.increment, "Catálogo actualizado", subasta.ronda);
+                } else if (pendiente != null) {
+                    pendiente[0] = fila.precio;
+                    pendiente[1] = fila.incremento;
+                } else if (!fragmentoPorTitulo.containsKey(fila.titulo)) {
+                    alta(fila);  // La subasta anterior ya terminó
+                } else {
+                    omitidas++;  // En curso en un fragmento: se mantiene como está
+                }
+            }
+            for (String titulo : bajas) {
+                if (anilloFragmentos == null) {
+                    if (!retirarSubasta(titulo) && mapaSubastas.containsKey(titulo))
+                        omitidas++;
+                } else if (subastasPendientes.remove(titulo) != null) {
+                    modalidadesPendientes.remove(titulo);
+                    gui.subastaRetirada(titulo);
+                } else if (fragmentoPorTitulo.containsKey(titulo)) {
+                    ACLMessage cancel = mensajeFragmentos(ACLMessage.CANCEL, fragmentoPorTitulo.get(titulo), "retirar");
+                    cancel.setContent(titulo);
+                    enviar(cancel);
                 }
+            }
+        }
+
+        private void alta(ImportadorCsv.Fila fila) {
+            if (anilloFragmentos != null) {
+                iniciarSubasta(fila.titulo, fila.precio, fila.incremento);
+            } else if (!mapaSubastas.containsKey(fila.titulo)) {
+                crearSubasta(fila.titulo, fila.precio, fila.incremento, periodoRonda, modalidadPorDefecto);
             } else {
-                block(); // Bloquear el comportamiento si no hay mensajes que procesar
+                omitidas++;
+                return;
             }
+            gui.agregarSubastaATabla(fila.titulo, fila.precio, fila.incremento, "", 0);
+        }
+
+        @Override
+        public void terminada(ImportadorCsv.Informe informe) {
+            gui.agregarNotificacion(informe + (omitidas == 0 ? "." : ". " + omitidas + " filas no aplicadas a subastas en curso."));
+            for (String rechazo : informe.rechazos)
+                gui.agregarNotificacion("  " + rechazo);
+        }
+    }
+
+    /**
+     * Enviar un mensaje y avisar al observador de cuántos receptores tiene.
+     */
+    private void enviar(ACLMessage msg) {
+        send(msg);
+        int receptores = 0;
+        Iterator<?> it = msg.getAllReceiver();
+        while (it.hasNext()) {
+            it.next();
+            receptores++;
+        }
+        mensajesEnviados.sumar(receptores);
+        gui.mensajeEnviado(msg.getPerformative(), receptores);
+    }
+
+    /**
+     * Crear y publicar las métricas del vendedor. Los medidores leen los contadores del
+     * agente desde el hilo que consulta las métricas, por lo que pueden ir algo retrasados.
+     */
+    private void crearMetricas(Argumentos argumentos) {
+        metricas = new Metricas(getLocalName());
+        metricas.medidor("vendedor_subastas_activas", "Subastas en curso", () -> mapaConversaciones.size());
+        rondasLanzadas = metricas.contador("vendedor_rondas_total", "Rondas lanzadas (CFP enviados)");
+        rondasPorSubasta = metricas.histograma("vendedor_rondas_por_subasta", "Rondas hasta tener ganador",
+                1, 2, 3, 5, 10, 20, 50, 100);
+        duracionRonda = metricas.histograma("vendedor_duracion_ronda_ms", "Tiempo entre el CFP y la evaluación de la ronda",
+                100, 250, 500, 1000, 2500, 5000, 10000, 20000, 30000, 60000);
+        destinatariosCfp = metricas.histograma("vendedor_destinatarios_cfp", "Participantes a los que se envía cada CFP",
+                1, 2, 5, 10, 20, 50, 100, 200, 500, 1000);
+        latenciaPropuesta = metricas.histograma("vendedor_latencia_propuesta_us", "Tiempo entre el CFP y cada PROPOSE válido",
+                100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 1000000);
+        subastasAutomaticas = metricas.contador("vendedor_subastas_automaticas_total", "Subastas resueltas con pujas automáticas");
+        timeoutsConfirmacion = metricas.contador("vendedor_timeouts_confirmacion_total", "Compras sin confirmar a tiempo");
+        decodificacionParalela = metricas.histograma("vendedor_decodificacion_us", "Tiempo de decodificación de cada PROPOSE en el pool",
+                10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000);
+        metricas.medidor("vendedor_decodificacion_pendientes", "Mensajes en el pool de decodificación sin entregar",
+                () -> decodificador == null ? 0 : decodificador.getPendientes());
+        ofertasSuplentes = metricas.contador("vendedor_ofertas_suplentes_total", "Compras ofrecidas a un suplente tras un rechazo o timeout");
+        mensajesEnviados = metricas.contador("vendedor_mensajes_enviados_total", "Mensajes enviados (por receptor)");
+        metricas.medidor("vendedor_propuestas_descartadas_total", "PROPOSE tardíos o de conversaciones desconocidas", () -> propuestasDescartadas);
+        metricas.medidor("vendedor_cola_mensajes", "Mensajes en la cola al empezar la última pasada del despachador",
+                () -> despachador == null ? 0 : despachador.getProfundidadCola());
+        metricas.medidor("vendedor_cola_mensajes_max", "Máximo de mensajes en la cola",
+                () -> despachador == null ? 0 : despachador.getMaxProfundidadCola());
+        metricas.medidor("vendedor_cache_aciertos_total", "Contenidos reutilizados de la caché de la ronda", () -> aciertosCache);
+        metricas.medidor("vendedor_cache_fallos_total", "Contenidos codificados", () -> fallosCache);
+        metricas.publicar();
+        int puerto = (int) argumentos.entero("puertoMetricas", 0);
+        if (puerto > 0) {
+            try {
+                Metricas.iniciarServidor(puerto);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    protected void notificarSalida(){
+        this.doDelete();
+    }
+
+    @Override
+    protected void takeDown() {
+        // Cancelar la suscripción al DF
+        if (suscripcionDF != null)
+            enviar(DFService.createCancelMessage(this, getDefaultDF(), suscripcionDF));
+        // Avisar al coordinador, o cerrar los fragmentos propios
+        if (coordinador != null)
+            enviar(mensajeFragmentos(ACLMessage.CANCEL, coordinador, "baja"));
+        for (String fragmento : fragmentosPropios)
+            enviar(mensajeFragmentos(ACLMessage.REQUEST, fragmento, "salir"));
+        System.out.println(getLocalName() + ": " + getEstadisticasCache());
+        System.out.println(getLocalName() + ": " + despachador.getEstadisticas());
+        System.out.println(getLocalName() + ": " + propuestasDescartadas + " propuestas tardías descartadas");
+        if (decodificador != null)
+            decodificador.cerrar();
+        metricas.retirar();
+        if (registro != null) {
+            try {
+                registro.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void procesarNoEntendido(ACLMessage msg) {
+        String sender = msg.getSender().getLocalName();
+        gui.agregarNotificacion("Recibido NOT_UNDERSTOOD de: " + sender);
+    }
+
+    /**
+     * Procesar el rechazo (REFUSE) de la compra por parte del ganador.
+     */
+    private void procesarRechazoCompra(ACLMessage msg) {
+        Subasta subasta;
+        String senderName = msg.getSender().getLocalName(); // Obtiene el nombre local (sin el sufijo del contenedor)
+        try {
+            // Extraer el contenido del mensaje utilizando el ContentManager
+            Action action = (Action)  getContentManager().extractContent(msg);
+            DefaultInformarCompra  infoCompra= (DefaultInformarCompra) action.getAction();
+            String booktitle= infoCompra.getLibro().getTitulo();
+            gui.agregarNotificacion("El comprador "+senderName+ " ha rechazado la compra de "+booktitle+".");
+            subasta = mapaConversaciones.get(msg.getConversationId());
+            if (subasta == null)
+                subasta = mapaSubastas.get(booktitle);
+        } catch (Exception e) {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+            enviar(reply);
+            return;
         }
+        // Solo cuenta el rechazo del candidato al que se espera; se pasa al siguiente sin esperar al plazo
+        if (subasta != null && !subasta.compraConfirmada && senderName.equals(subasta.buyer))
+            siguienteCandidato(subasta);
     }
 
 }
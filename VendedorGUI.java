@@ -3,15 +3,23 @@ package codigo;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
-public class VendedorGUI extends JFrame {
+public class VendedorGUI extends JFrame implements ObservadorVendedor {
     private final Vendedor agente; // Referencia al agente
     private final JTextArea areaNotificaciones; // Área de texto para mensajes
+    private final ColaNotificaciones notificaciones; // Notificaciones pendientes de mostrar
     private final JTextField txtTitulo, txtPrecioInicial, txtIncremento;
-    private final DefaultTableModel modeloActivas; // Modelo para subastas activas
+    private final JComboBox<String> cmbModalidad;
+    private final ModeloSubastasActivas modeloActivas; // Modelo para subastas activas, indexado por título
     private final DefaultTableModel modeloFinalizadas; // Modelo para subastas finalizadas
+    // Cambios de las tablas encolados desde el hilo del agente y aplicados en el hilo de Swing
+    private final ConcurrentLinkedQueue<Runnable> cambiosPendientes = new ConcurrentLinkedQueue<>();
+    private static final int REFRESCO_TABLAS = 100; // Intervalo mínimo entre repintados de las tablas (ms)
 
     public VendedorGUI(Vendedor agente) {
         this.agente = agente;
@@ -32,6 +40,7 @@ public class VendedorGUI extends JFrame {
         // Área de mensajes
         areaNotificaciones = new JTextArea();
         areaNotificaciones.setEditable(false); // Solo lectura
+        notificaciones = new ColaNotificaciones(areaNotificaciones);
         JScrollPane scrollMensajes = new JScrollPane(areaNotificaciones);
         scrollMensajes.setBorder(BorderFactory.createTitledBorder("Notificaciones"));
         // Configurar la altura del área de mensajes para no tapar la vista
@@ -71,9 +80,18 @@ public class VendedorGUI extends JFrame {
         txtIncremento = new JTextField(20);
         panelFormulario.add(txtIncremento, gbc);
 
-        // Botón para iniciar subasta
+        // Modalidad (en la holandesa el incremento es lo que baja el precio en cada ronda)
         gbc.gridx = 0;
         gbc.gridy = 3;
+        panelFormulario.add(new JLabel("Modalidad:"), gbc);
+
+        gbc.gridx = 1;
+        cmbModalidad = new JComboBox<>(new String[]{Vendedor.SUBASTA_INGLESA, Vendedor.SUBASTA_SOBRE_CERRADO, Vendedor.SUBASTA_HOLANDESA});
+        panelFormulario.add(cmbModalidad, gbc);
+
+        // Botón para iniciar subasta
+        gbc.gridx = 0;
+        gbc.gridy = 4;
         gbc.gridwidth = 2;
         gbc.anchor = GridBagConstraints.CENTER;
         JButton btnIniciarSubasta = new JButton("Iniciar Subasta");
@@ -94,8 +112,8 @@ public class VendedorGUI extends JFrame {
                         return;
                     }
 
-                    // Llamar al método del agente para iniciar la subasta
-                    agente.iniciarSubasta(titulo, precioInicial, incremento);
+                    // Pedir la subasta al agente; se inicia en su hilo
+                    agente.solicitarSubasta(titulo, precioInicial, incremento, (String) cmbModalidad.getSelectedItem());
                     agregarSubastaATabla(titulo,precioInicial, incremento, "", 0);
 
                     // Limpiar los campos de texto
@@ -110,9 +128,19 @@ public class VendedorGUI extends JFrame {
             }
         });
 
+        // Botón para importar un catálogo CSV
+        gbc.gridy = 5;
+        JButton btnImportar = new JButton("Importar Catálogo...");
+        panelFormulario.add(btnImportar, gbc);
+        btnImportar.addActionListener(e -> {
+            JFileChooser selector = new JFileChooser();
+            if (selector.showOpenDialog(VendedorGUI.this) == JFileChooser.APPROVE_OPTION)
+                agente.importarCatalogo(selector.getSelectedFile().toPath());
+        });
+
         // Tablas de subastas
         // Crear el modelo para subastas activas
-        modeloActivas = new DefaultTableModel(new String[]{"Subasta", "Precio (ronda)", "Incremento", "Pujadores", "Ronda"}, 0);
+        modeloActivas = new ModeloSubastasActivas();
         // Tabla para subastas activas
         JTable tablaSubastasActivas = new JTable(modeloActivas);
         JScrollPane scrollActivas = new JScrollPane(tablaSubastasActivas);
@@ -138,51 +166,67 @@ public class VendedorGUI extends JFrame {
         // Añadir componentes al JFrame
         add(panelFormulario, BorderLayout.NORTH);
         add(panelPrincipal, BorderLayout.CENTER);
+
+        // Aplicar por lotes los cambios encolados, como mucho una vez por intervalo
+        new Timer(REFRESCO_TABLAS, e -> aplicarCambios()).start();
+    }
+
+    private void aplicarCambios() {
+        Runnable cambio;
+        while ((cambio = cambiosPendientes.poll()) != null)
+            cambio.run();
+        modeloActivas.publicarCambios();
     }
 
     // Método para mostrar mensajes en el área de texto
     public void agregarNotificacion(String mensaje) {
-        areaNotificaciones.append(mensaje + "\n");
-        areaNotificaciones.setCaretPosition(areaNotificaciones.getDocument().getLength());
+        notificaciones.agregar(mensaje);
     }
 
     // Método para agregar una subasta a la tabla de activas
     public void agregarSubastaATabla(String titulo, float precioActual, float incremento, String pujadores, int ronda) {
         // Agregar una nueva fila a la tabla de subastas activas
-        modeloActivas.addRow(new Object[]{titulo, precioActual, incremento, pujadores, ronda});
+        cambiosPendientes.add(() -> modeloActivas.agregar(titulo, precioActual, incremento, pujadores, ronda));
     }
 
     // Método para actualizar una subasta en la tabla de activas
     public void actualizarSubastaEnTabla(String titulo, float precioActual, float incremento, String pujadores, int ronda) {
-        for (int i = 0; i < modeloActivas.getRowCount(); i++) {
-            if (modeloActivas.getValueAt(i, 0).equals(titulo)) {
-                modeloActivas.setValueAt(precioActual, i, 1);   // Actualizar precio actual
-                modeloActivas.setValueAt(incremento, i, 2);      // Actualizar incremento
-                modeloActivas.setValueAt(pujadores, i, 3);      // Actualizar pujadores
-                modeloActivas.setValueAt(ronda, i, 4);          // Actualizar ronda
-                break;
-            }
-        }
+        cambiosPendientes.add(() -> modeloActivas.actualizar(titulo, precioActual, incremento, pujadores, ronda));
     }
 
 
     // Método para notificar cuando un libro ha sido vendido y moverlo a la tabla de finalizadas
     public void notificarLibroVendido(String titulo, String comprador, float precioFinal, String telefono) {
         // Mover la subasta de Activas a Finalizadas
-        for (int i = 0; i < modeloActivas.getRowCount(); i++) {
-            if (modeloActivas.getValueAt(i, 0).equals(titulo)) {
+        cambiosPendientes.add(() -> {
+            if (modeloActivas.quitar(titulo))
                 modeloFinalizadas.addRow(new Object[]{titulo, comprador, precioFinal, telefono});
-                modeloActivas.removeRow(i);
-                break;
-            }
-        }
+        });
+    }
+
+    public void subastaRetirada(String titulo) {
+        cambiosPendientes.add(() -> modeloActivas.quitar(titulo));
     }
 
     private void handleExitAction() {
         agente.notificarSalida();
 
         // Luego cierra la ventana
+        notificaciones.detener();
         dispose(); // Libera los recursos y cierra la ventana
     }
 
+    /**
+     * Copiar las notificaciones a un fichero que rota al superar el tamaño máximo.
+     */
+    public void volcarNotificacionesA(Path fichero) {
+        // El fichero solo se usa desde el hilo de Swing, igual que el volcado
+        SwingUtilities.invokeLater(() -> {
+            try {
+                notificaciones.volcarAFichero(fichero, ColaNotificaciones.TAMANO_FICHERO);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
 }
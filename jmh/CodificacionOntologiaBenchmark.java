@@ -0,0 +1,189 @@
+package codigo;
+
+import jade.content.ContentElement;
+import jade.content.ContentManager;
+import jade.content.lang.Codec;
+import jade.content.lang.leap.LEAPCodec;
+import jade.content.lang.sl.SLCodec;
+import jade.content.onto.Ontology;
+import jade.content.onto.basic.Action;
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import ontologia.IbrowOntology;
+import ontologia.impl.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks JMH de la codificación y decodificación de las acciones de IbrowOntology
+ * con el ContentManager, tal como se usan en los mensajes de las subastas.
+ *
+ * Se compila junto a las clases del agente con JMH y JADE en el classpath. El main lanza
+ * todos los benchmarks con el perfilador de GC (asignación por operación); admite las
+ * opciones habituales de JMH en la línea de órdenes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodificacionOntologiaBenchmark {
+
+    /**
+     * ContentManager con el lenguaje indicado y los mensajes ya codificados para decodificar.
+     */
+    @State(Scope.Thread)
+    public static class Codificacion {
+        @Param({"fipa-sl", "LEAP"})
+        public String lenguaje;
+
+        ContentManager contentManager;
+        Ontology ontology;
+        AID vendedor;
+        Action ofertar, proponer, informarFinal, mandarDatosCompra;
+        ACLMessage ofertarCodificado, proponerCodificado, informarFinalCodificado, mandarDatosCompraCodificado;
+
+        @Setup
+        public void preparar() throws Exception {
+            Codec codec = lenguaje.equals("LEAP") ? new LEAPCodec() : new SLCodec();
+            ontology = IbrowOntology.getInstance();
+            contentManager = new ContentManager();
+            contentManager.registerLanguage(codec, lenguaje);
+            contentManager.registerOntology(ontology);
+            vendedor = new AID("vendedor@192.168.1.10:1099/JADE", AID.ISGUID);
+
+            DefaultOfertar accionOfertar = new DefaultOfertar();
+            DefaultOferta oferta = new DefaultOferta();
+            oferta.setProducto(libro());
+            accionOfertar.setOferta(oferta);
+            ofertar = new Action(vendedor, accionOfertar);
+
+            DefaultProponer accionProponer = new DefaultProponer();
+            accionProponer.setLibro(libro());
+            accionProponer.setRespuesta(true);
+            proponer = new Action(vendedor, accionProponer);
+
+            DefaultInformarFinal accionFinal = new DefaultInformarFinal();
+            accionFinal.setLibro(libro());
+            accionFinal.setGanador("comprador-0042");
+            accionFinal.setNumeroRonda(17);
+            informarFinal = new Action(vendedor, accionFinal);
+
+            DefaultMandarDatosCompra accionDatos = new DefaultMandarDatosCompra();
+            accionDatos.setLibro(libro());
+            accionDatos.setTelefono(600123456);
+            mandarDatosCompra = new Action(vendedor, accionDatos);
+
+            ofertarCodificado = codificar(this, ofertar);
+            proponerCodificado = codificar(this, proponer);
+            informarFinalCodificado = codificar(this, informarFinal);
+            mandarDatosCompraCodificado = codificar(this, mandarDatosCompra);
+        }
+    }
+
+    /**
+     * Resultado de ronda con un número variable de pujadores, el contenido que más crece.
+     */
+    @State(Scope.Thread)
+    public static class Ronda {
+        @Param({"1", "10", "100", "1000"})
+        public int pujadores;
+
+        Action informarRonda;
+        ACLMessage informarRondaCodificado;
+
+        @Setup
+        public void preparar(Codificacion codificacion) throws Exception {
+            DefaultRondaSubasta rondaSubasta = new DefaultRondaSubasta();
+            rondaSubasta.setIncremento(2.5f);
+            rondaSubasta.setNumeroRonda(17);
+            rondaSubasta.setLibro(libro());
+            jade.util.leap.List lista = new jade.util.leap.ArrayList();
+            for (int i = 0; i < pujadores; i++)
+                lista.add(String.format("comprador-%04d", i));
+            rondaSubasta.setPujadores(lista);
+            DefaultInformarRonda accion = new DefaultInformarRonda();
+            accion.setRondaSubasta(rondaSubasta);
+            informarRonda = new Action(codificacion.vendedor, accion);
+            informarRondaCodificado = codificar(codificacion, informarRonda);
+        }
+    }
+
+    private static DefaultLibro libro() {
+        DefaultLibro libro = new DefaultLibro();
+        libro.setTitulo("Cien años de soledad (edición conmemorativa)");
+        libro.setPrecio(42.5f);
+        return libro;
+    }
+
+    private static ACLMessage codificar(Codificacion codificacion, Action accion) throws Exception {
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setLanguage(codificacion.lenguaje);
+        msg.setOntology(codificacion.ontology.getName());
+        codificacion.contentManager.fillContent(msg, accion);
+        return msg;
+    }
+
+    @Benchmark
+    public ACLMessage codificarOfertar(Codificacion codificacion) throws Exception {
+        return codificar(codificacion, codificacion.ofertar);
+    }
+
+    @Benchmark
+    public ContentElement decodificarOfertar(Codificacion codificacion) throws Exception {
+        return codificacion.contentManager.extractContent(codificacion.ofertarCodificado);
+    }
+
+    @Benchmark
+    public ACLMessage codificarProponer(Codificacion codificacion) throws Exception {
+        return codificar(codificacion, codificacion.proponer);
+    }
+
+    @Benchmark
+    public ContentElement decodificarProponer(Codificacion codificacion) throws Exception {
+        return codificacion.contentManager.extractContent(codificacion.proponerCodificado);
+    }
+
+    @Benchmark
+    public ACLMessage codificarInformarRonda(Codificacion codificacion, Ronda ronda) throws Exception {
+        return codificar(codificacion, ronda.informarRonda);
+    }
+
+    @Benchmark
+    public ContentElement decodificarInformarRonda(Codificacion codificacion, Ronda ronda) throws Exception {
+        return codificacion.contentManager.extractContent(ronda.informarRondaCodificado);
+    }
+
+    @Benchmark
+    public ACLMessage codificarInformarFinal(Codificacion codificacion) throws Exception {
+        return codificar(codificacion, codificacion.informarFinal);
+    }
+
+    @Benchmark
+    public ContentElement decodificarInformarFinal(Codificacion codificacion) throws Exception {
+        return codificacion.contentManager.extractContent(codificacion.informarFinalCodificado);
+    }
+
+    @Benchmark
+    public ACLMessage codificarMandarDatosCompra(Codificacion codificacion) throws Exception {
+        return codificar(codificacion, codificacion.mandarDatosCompra);
+    }
+
+    @Benchmark
+    public ContentElement decodificarMandarDatosCompra(Codificacion codificacion) throws Exception {
+        return codificacion.contentManager.extractContent(codificacion.mandarDatosCompraCodificado);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(CodificacionOntologiaBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}